@@ -18,6 +18,7 @@
  CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
 package com.timboudreau.adhoc.project;
 
+import com.timboudreau.adhoc.project.bytype.ScanBudget;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.File;
@@ -85,6 +86,12 @@ public class AdhocProject implements Project,
     private final PI info = new PI();
     private final AdhocProjectCustomizerProvider customizer = new AdhocProjectCustomizerProvider(this);
     public static final String TYPE_NAME = "com-timboudreau-adhoc-project";
+    public static final String PROP_SCAN_BUDGET = "scanBudget";
+    public static final String PROP_EXCLUSIONS = "exclusions";
+    private volatile Exclusions exclusions;
+    private final GitIgnoreVisibility gitignore = new GitIgnoreVisibility(this);
+    private ProjectVisibility visibility;
+    private final Favorites favorites = new Favorites(this);
 
     public AdhocProject(FileObject dir, ProjectState state) throws IOException {
         this.encodingQuery = new EncQueryImpl();
@@ -99,7 +106,17 @@ public class AdhocProject implements Project,
 
     @Override
     public Lookup getLookup() {
-        return Lookups.fixed(this, aux, encodingQuery, ops, info, customizer);
+        return Lookups.fixed(this, aux, encodingQuery, ops, info, customizer, gitignore);
+    }
+
+    /**
+     * Visibility of files in this project, including its .gitignore files.
+     */
+    public synchronized ProjectVisibility getVisibility() {
+        if (visibility == null) {
+            visibility = new ProjectVisibility(getLookup());
+        }
+        return visibility;
     }
 
     @Override
@@ -269,13 +286,21 @@ public class AdhocProject implements Project,
     }
 
     private String prefsNodeName() {
+        return prefsNodeName(getProjectDirectory());
+    }
+
+    /**
+     * The name under which data for a project folder is stored - the
+     * preferences node name, also used to name cache files.
+     */
+    public static String prefsNodeName(FileObject dir) {
         String delim;
         if (Utilities.isWindows()) {
             delim = "--";
         } else {
             delim = ";;";
         }
-        String nodeName = delim + getProjectDirectory().getPath().replace(
+        String nodeName = delim + dir.getPath().replace(
                 '/', '_').replace('\\', '_').replace(":", "~");
         return nodeName;
     }
@@ -307,55 +332,23 @@ public class AdhocProject implements Project,
         return null;
     }
 
-    void clearFavorites() {
-        try {
-            Preferences forProject = preferences(false);
-            if (forProject != null) {
-                forProject.clear();
-                forProject.removeNode();
-            }
-        } catch (BackingStoreException ex) {
-            Exceptions.printStackTrace(ex);
-        }
+    Favorites favoritesModel() {
+        return favorites;
     }
 
-    void saveFavorites(Iterable<Favorite> items) {
-        try {
-            Preferences forProject = preferences(true);
-            for (Favorite fav : items) {
-                Preferences forFile = forProject.node(fav.path().
-                        replace('/', '_').replace('\\', '_'));
-                forFile.put("name", fav.path());
-                forFile.putInt("value", fav.count);
-            }
-        } catch (BackingStoreException ex) {
-            Exceptions.printStackTrace(ex);
-        }
+    /**
+     * The project's favorites with a positive usage count, most used first.
+     */
+    public List<Favorite> favorites() {
+        return favorites.list();
     }
 
-    public List<Favorite> favorites() {
-        List<Favorite> favorites = new ArrayList<>();
-        try {
-            Preferences forProject = preferences(false);
-            if (forProject != null) {
-                String[] s = forProject.childrenNames();
-                for (String ch : s) {
-                    Preferences forFile = forProject.node(ch);
-                    if (forFile != null) {
-                        int val = forFile.getInt("value", 0);
-                        String name = forFile.get("name", null);
-                        if (val > 0 && name != null) {
-                            Favorite fav = new Favorite(val, name);
-                            favorites.add(fav);
-                        }
-                    }
-                }
-            }
-        } catch (BackingStoreException ex) {
-            Exceptions.printStackTrace(ex);
-        }
-        Collections.sort(favorites);
-        return favorites;
+    /**
+     * The best ranked of the project's favorites with a positive usage
+     * count, most used first.
+     */
+    public List<Favorite> favorites(int max) {
+        return favorites.list(max);
     }
 
 //    @Override
@@ -440,6 +433,95 @@ public class AdhocProject implements Project,
         }
     }
 
+    public int getScanMaxDepth() {
+        return getScanSetting("scanMaxDepth", ScanBudget.DEFAULT_MAX_DEPTH);
+    }
+
+    public int getScanMaxFiles() {
+        return getScanSetting("scanMaxFiles", ScanBudget.DEFAULT_MAX_FILES);
+    }
+
+    public int getScanMaxSeconds() {
+        return getScanSetting("scanMaxSeconds", ScanBudget.DEFAULT_MAX_SECONDS);
+    }
+
+    public void setScanMaxDepth(int val) {
+        setScanSetting("scanMaxDepth", val);
+    }
+
+    public void setScanMaxFiles(int val) {
+        setScanSetting("scanMaxFiles", val);
+    }
+
+    public void setScanMaxSeconds(int val) {
+        setScanSetting("scanMaxSeconds", val);
+    }
+
+    /**
+     * Limits on scanning the project folder for the Files by Type node.
+     */
+    public ScanBudget getScanBudget() {
+        return new ScanBudget(getScanMaxDepth(), getScanMaxFiles(), getScanMaxSeconds());
+    }
+
+    private int getScanSetting(String key, int defaultValue) {
+        try {
+            Preferences p = preferences(false);
+            return p == null ? defaultValue : Math.max(1, p.getInt(key, defaultValue));
+        } catch (BackingStoreException ex) {
+            Exceptions.printStackTrace(ex);
+            return defaultValue;
+        }
+    }
+
+    private void setScanSetting(String key, int val) {
+        try {
+            ScanBudget old = getScanBudget();
+            preferences(true).putInt(key, val);
+            ScanBudget nue = getScanBudget();
+            if (!old.equals(nue)) {
+                supp.firePropertyChange(PROP_SCAN_BUDGET, old, nue);
+            }
+        } catch (BackingStoreException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+    }
+
+    /**
+     * Files and folders the project does not show or scan.
+     */
+    public Exclusions getExclusions() {
+        String patterns = Exclusions.DEFAULT_PATTERNS;
+        try {
+            Preferences p = preferences(false);
+            if (p != null) {
+                patterns = p.get("excludes", patterns);
+            }
+        } catch (BackingStoreException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        // Only recompile when the patterns change
+        Exclusions result = exclusions;
+        if (result == null || !result.patterns().equals(patterns)) {
+            exclusions = result = Exclusions.compile(patterns);
+        }
+        return result;
+    }
+
+    public void setExclusionPatterns(String patterns) {
+        try {
+            Exclusions old = getExclusions();
+            Exclusions nue = Exclusions.compile(patterns);
+            if (!old.equals(nue)) {
+                preferences(true).put("excludes", nue.patterns());
+                exclusions = nue;
+                supp.firePropertyChange(PROP_EXCLUSIONS, old, nue);
+            }
+        } catch (BackingStoreException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+    }
+
     public void setDisplayName(String name) {
         try {
             String old = getDisplayName();
@@ -589,6 +671,15 @@ public class AdhocProject implements Project,
         return view == null ? Node.EMPTY : view;
     }
 
+    /**
+     * Record that a file was opened other than from the project's tree,
+     * updating the Favorites node as opening it from the tree does.
+     */
+    void fileOpened(String relPath) {
+        favoritesModel().used(relPath, false);
+        refreshFavorites();
+    }
+
     void refreshFavorites() {
         AdhocProjectNode view = logicalView == null ? null
                 : logicalView.get();
@@ -18,7 +18,7 @@
  CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
 package com.timboudreau.adhoc.project;
 
-import com.timboudreau.adhoc.project.bytype.ByTypeChildren;
+import com.timboudreau.adhoc.project.bytype.ByTypeNode;
 import java.awt.Image;
 import java.awt.event.ActionEvent;
 import java.beans.PropertyChangeEvent;
@@ -27,14 +27,13 @@ import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import org.netbeans.api.project.ProjectInformation;
-import org.netbeans.api.queries.VisibilityQuery;
 import org.netbeans.spi.project.ui.LogicalViewProvider;
 import org.netbeans.spi.project.ui.support.CommonProjectActions;
 import org.openide.filesystems.FileObject;
@@ -50,6 +49,7 @@ import org.openide.util.ContextAwareAction;
 import org.openide.util.Exceptions;
 import org.openide.util.ImageUtilities;
 import org.openide.util.Lookup;
+import org.openide.util.RequestProcessor;
 import org.openide.util.WeakListeners;
 import org.openide.util.lookup.Lookups;
 import org.openide.util.lookup.ProxyLookup;
@@ -63,6 +63,7 @@ public class AdhocProjectNode extends FilterNode implements LogicalViewProvider,
     private final List<Runnable> onRefreshFavorites = new ArrayList<>();
     private final AdhocProject prj;
     private final SourcesNode sources;
+    private final ByTypeNode byType;
 
     public AdhocProjectNode(AdhocProject prj) throws DataObjectNotFoundException {
         this(prj, DataObject.find(prj.getProjectDirectory()));
@@ -71,17 +72,37 @@ public class AdhocProjectNode extends FilterNode implements LogicalViewProvider,
     AdhocProjectNode(AdhocProject prj, DataObject dob) throws DataObjectNotFoundException {
         super(dob.getNodeDelegate(), new Children.Array(), new ProxyLookup(Lookups.fixed(prj), dob.getLookup()));
         this.prj = prj;
-        AbstractNode byType = new AbstractNode(new ByTypeChildren(dob.getPrimaryFile(), factory));
-        byType.setDisplayName ("Files by Type");
-        byType.setName("byType");
-        byType.setIconBaseWithExtension("com/timboudreau/adhoc/project/types.png");
+        byType = new ByTypeNode(dob.getPrimaryFile(), prj.getScanBudget(),
+                prj.getExclusions(), prj.getVisibility(), factory);
         getChildren().add(new Node[]{
             new FavoritesNode(prj, onRefreshFavorites),
             byType,
+            byType.createLargestFilesNode(),
+            byType.createRecentFilesNode(),
+            byType.createDuplicatesNode(),
             sources = new SourcesNode(prj, onRefreshFavorites)});
         prj.addPropertyChangeListener(WeakListeners.propertyChange(this, prj));
+        prj.getVisibility().addChangeListener(WeakListeners.change(visibilityListener, prj.getVisibility()));
+        prj.favoritesModel().addChangeListener(WeakListeners.change(favoritesListener, prj.favoritesModel()));
     }
 
+    private final ChangeListener visibilityListener = new ChangeListener() {
+
+        @Override
+        public void stateChanged(ChangeEvent ce) {
+            sources.visibilityChanged();
+        }
+    };
+
+    private final ChangeListener favoritesListener = new ChangeListener() {
+
+        @Override
+        public void stateChanged(ChangeEvent ce) {
+            // a favorite was renamed, moved or deleted
+            refreshFavorites();
+        }
+    };
+
     void refreshFavorites() {
         for (Runnable r : onRefreshFavorites) {
             r.run();
@@ -180,6 +201,11 @@ public class AdhocProjectNode extends FilterNode implements LogicalViewProvider,
         if (pce != null) {
             if (ProjectInformation.PROP_DISPLAY_NAME.equals(pce.getPropertyName())) {
                 fireDisplayNameChange(pce.getOldValue() + "", pce.getNewValue() + "");
+            } else if (AdhocProject.PROP_SCAN_BUDGET.equals(pce.getPropertyName())) {
+                byType.setScanBudget(prj.getScanBudget());
+            } else if (AdhocProject.PROP_EXCLUSIONS.equals(pce.getPropertyName())) {
+                byType.setExclusions(prj.getExclusions());
+                sources.visibilityChanged();
             } else {
                 refreshFavorites();
             }
@@ -237,16 +263,32 @@ public class AdhocProjectNode extends FilterNode implements LogicalViewProvider,
 
             @Override
             public void actionPerformed(ActionEvent ae) {
-                prj.clearFavorites();
+                prj.favoritesModel().clear();
                 for (Runnable r : run) {
                     r.run();
                 }
             }
         }
 
+        /**
+         * Refreshes are coalesced, so opening many files at once updates the
+         * favorites once, and skipped when the favorites shown would not
+         * change; since favorites are equal if their paths are, refreshing
+         * keeps the nodes of favorites still shown.
+         */
         final static class FavoritesChildren extends ChildFactory<Favorite> implements Runnable {
 
+            private static final RequestProcessor rp = new RequestProcessor(FavoritesChildren.class.getSimpleName(), 1);
+            private static final int REFRESH_DELAY = 250;
             private final AdhocProject prj;
+            private final RequestProcessor.Task refreshTask = rp.create(new Runnable() {
+                @Override
+                public void run() {
+                    refreshIfChanged();
+                }
+            });
+            // The paths of the favorites shown, in order
+            private List<String> shown;
 
             @SuppressWarnings("LeakingThisInConstructor")
             FavoritesChildren(AdhocProject prj, List<Runnable> run) {
@@ -256,20 +298,41 @@ public class AdhocProjectNode extends FilterNode implements LogicalViewProvider,
 
             @Override
             protected boolean createKeys(List<Favorite> list) {
-                List<Favorite> all = prj.favorites();
-                int max = prj.getMaxFavorites();
+                List<Favorite> keys = keys();
+                synchronized (this) {
+                    shown = paths(keys);
+                }
+                list.addAll(keys);
+                return true;
+            }
 
-                if (all.size() > max) {
-                    all = all.subList(0, max);
+            private void refreshIfChanged() {
+                List<String> paths = paths(keys());
+                synchronized (this) {
+                    if (paths.equals(shown)) {
+                        return;
+                    }
                 }
+                refresh(false);
+            }
+
+            private static List<String> paths(List<Favorite> favorites) {
+                List<String> result = new ArrayList<>(favorites.size());
+                for (Favorite f : favorites) {
+                    result.add(f.path());
+                }
+                return result;
+            }
+
+            private List<Favorite> keys() {
+                List<Favorite> all = prj.favorites(prj.getMaxFavorites());
                 int min = prj.getFavoriteUsageCount();
                 for (Iterator<Favorite> it = all.iterator(); it.hasNext();) {
                     if (it.next().count < min) {
                         it.remove();
                     }
                 }
-                list.addAll(all);
-                return true;
+                return all;
             }
 
             @Override
@@ -294,7 +357,7 @@ public class AdhocProjectNode extends FilterNode implements LogicalViewProvider,
 
             @Override
             public void run() {
-                refresh(false);
+                refreshTask.schedule(REFRESH_DELAY);
             }
         }
     }
@@ -342,19 +405,8 @@ public class AdhocProjectNode extends FilterNode implements LogicalViewProvider,
                 FileObject fo = getLookup().lookup(DataObject.class).getPrimaryFile();
                 String rp = FileUtil.getRelativePath(prj.getProjectDirectory(), fo);
                 if (rp != null) {
-                    Iterable<Favorite> favs = prj.favorites();
-                    boolean found = false;
-                    for (Favorite f : favs) {
-                        if (f.path().equals(rp)) {
-                            found = true;
-                            f.count = -4;
-                            break;
-                        }
-                    }
-                    if (found) {
-                        prj.saveFavorites(favs);
-                        FN.this.ch.run();
-                    }
+                    prj.favoritesModel().remove(rp);
+                    FN.this.ch.run();
                 }
             }
         }
@@ -380,6 +432,8 @@ public class AdhocProjectNode extends FilterNode implements LogicalViewProvider,
 
     private static class SourcesNode extends FilterNode {
 
+        private final ProxyOpenFilterChildren kids;
+
         public SourcesNode(AdhocProject prj, List<Runnable> run) throws DataObjectNotFoundException {
             this(prj, DataObject.find(prj.getProjectDirectory()), run);
             disableDelegation(DELEGATE_SET_DISPLAY_NAME);
@@ -391,9 +445,17 @@ public class AdhocProjectNode extends FilterNode implements LogicalViewProvider,
         }
 
         SourcesNode(AdhocProject prj, DataObject dob, List<Runnable> run) {
-            super(dob.getNodeDelegate(),
-                    new ProxyOpenFilterChildren(prj, dob.getNodeDelegate(), run),
+            this(prj, dob, new ProxyOpenFilterChildren(prj, dob.getNodeDelegate(), run));
+        }
+
+        private SourcesNode(AdhocProject prj, DataObject dob, ProxyOpenFilterChildren kids) {
+            super(dob.getNodeDelegate(), kids,
                     new ProxyLookup(prj.getLookup(), dob.getLookup()));
+            this.kids = kids;
+        }
+
+        void visibilityChanged() {
+            kids.visibilityChanged();
         }
 
         @Override
@@ -431,36 +493,41 @@ public class AdhocProjectNode extends FilterNode implements LogicalViewProvider,
             DataObject dob = key.getLookup().lookup(DataObject.class);
             if (dob != null) {
                 FileObject fo = dob.getPrimaryFile();
-                if (!VisibilityQuery.getDefault().isVisible(fo)) {
+                if (!prj.getVisibility().isVisible(fo)) {
+                    return new Node[0];
+                }
+                // Parents were checked when they were shown, so only the
+                // file's own name and path need checking
+                String relPath = FileUtil.getRelativePath(prj.getProjectDirectory(), fo);
+                if (relPath != null && prj.getExclusions().isExcluded(relPath)) {
                     return new Node[0];
                 }
             }
             return new Node[]{new FN(key)};
         }
 
+        void visibilityChanged() {
+            // Folders never expanded will check when they are
+            if (!isInitialized()) {
+                return;
+            }
+            for (Node n : original.getChildren().getNodes()) {
+                refreshKey(n);
+            }
+            for (Node n : getNodes()) {
+                if (n.getChildren() instanceof ProxyOpenFilterChildren) {
+                    ((ProxyOpenFilterChildren) n.getChildren()).visibilityChanged();
+                }
+            }
+        }
+
         private void updateFavorites(Node node, boolean explicit) {
             DataObject dob = node.getLookup().lookup(DataObject.class);
             if (dob != null) {
                 String relPath = FileUtil.getRelativePath(prj.getProjectDirectory(), dob.getPrimaryFile());
                 if (relPath != null) {
-                    Set<Favorite> it = new HashSet<>(prj.favorites());
-                    // Always move it into the highest position
-                    int max = 1;
-                    for (Favorite f : it) {
-                        max = Math.max(max, f.count);
-                    }
-                    boolean found = false;
-                    for (Favorite item : it) {
-                        if (item.relPath.equals(relPath)) {
-                            item.count = explicit ? max + 1 : item.count + 1;
-                            found = true;
-                            break;
-                        }
-                    }
-                    if (!found) {
-                        it.add(new Favorite(explicit ? max + 1 : 1, relPath));
-                    }
-                    prj.saveFavorites(it);
+                    // Explicitly added moves it into the highest position
+                    prj.favoritesModel().used(relPath, explicit);
                     for (Runnable r : this.runs) {
                         r.run();
                     }
@@ -42,6 +42,8 @@ public class BasicCustomizer extends javax.swing.JPanel implements FocusListener
         jTextField1.setText(prj.getDisplayName());
         jTextField1.getDocument().addDocumentListener(this);
         jTextField1.addFocusListener(this);
+        jTextField2.setText(prj.getExclusions().patterns());
+        jTextField2.getDocument().addDocumentListener(this);
         jSpinner1.addChangeListener(new ChangeListener() {
 
             @Override
@@ -56,6 +58,27 @@ public class BasicCustomizer extends javax.swing.JPanel implements FocusListener
                 maxFavoritesChanged(null);
             }
         });
+        jSpinner3.addChangeListener(new ChangeListener() {
+
+            @Override
+            public void stateChanged(ChangeEvent ce) {
+                scanMaxDepthChanged(null);
+            }
+        });
+        jSpinner4.addChangeListener(new ChangeListener() {
+
+            @Override
+            public void stateChanged(ChangeEvent ce) {
+                scanMaxFilesChanged(null);
+            }
+        });
+        jSpinner5.addChangeListener(new ChangeListener() {
+
+            @Override
+            public void stateChanged(ChangeEvent ce) {
+                scanMaxSecondsChanged(null);
+            }
+        });
     }
 
     @SuppressWarnings("unchecked")
@@ -70,6 +93,14 @@ public class BasicCustomizer extends javax.swing.JPanel implements FocusListener
         jSpinner1 = new javax.swing.JSpinner();
         jLabel4 = new javax.swing.JLabel();
         jSpinner2 = new javax.swing.JSpinner();
+        jLabel5 = new javax.swing.JLabel();
+        jSpinner3 = new javax.swing.JSpinner();
+        jLabel6 = new javax.swing.JLabel();
+        jSpinner4 = new javax.swing.JSpinner();
+        jLabel7 = new javax.swing.JLabel();
+        jSpinner5 = new javax.swing.JSpinner();
+        jLabel8 = new javax.swing.JLabel();
+        jTextField2 = new javax.swing.JTextField();
 
         org.openide.awt.Mnemonics.setLocalizedText(jLabel1, org.openide.util.NbBundle.getMessage(BasicCustomizer.class, "BasicCustomizer.jLabel1.text")); // NOI18N
 
@@ -117,6 +148,60 @@ public class BasicCustomizer extends javax.swing.JPanel implements FocusListener
             }
         });
 
+        jLabel5.setLabelFor(jSpinner3);
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel5, org.openide.util.NbBundle.getMessage(BasicCustomizer.class, "BasicCustomizer.jLabel5.text")); // NOI18N
+        jLabel5.setToolTipText(org.openide.util.NbBundle.getMessage(BasicCustomizer.class, "BasicCustomizer.jLabel5.toolTipText")); // NOI18N
+
+        jSpinner3.setModel(new javax.swing.SpinnerNumberModel(12, 1, 64, 1));
+        jSpinner3.setValue(prj.getScanMaxDepth());
+        jSpinner3.addAncestorListener(new javax.swing.event.AncestorListener() {
+            public void ancestorAdded(javax.swing.event.AncestorEvent evt) {
+                scanMaxDepthChanged(evt);
+            }
+            public void ancestorRemoved(javax.swing.event.AncestorEvent evt) {
+            }
+            public void ancestorMoved(javax.swing.event.AncestorEvent evt) {
+            }
+        });
+
+        jLabel6.setLabelFor(jSpinner4);
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel6, org.openide.util.NbBundle.getMessage(BasicCustomizer.class, "BasicCustomizer.jLabel6.text")); // NOI18N
+        jLabel6.setToolTipText(org.openide.util.NbBundle.getMessage(BasicCustomizer.class, "BasicCustomizer.jLabel6.toolTipText")); // NOI18N
+
+        jSpinner4.setModel(new javax.swing.SpinnerNumberModel(1000000, 1000, 10000000, 1000));
+        jSpinner4.setValue(prj.getScanMaxFiles());
+        jSpinner4.addAncestorListener(new javax.swing.event.AncestorListener() {
+            public void ancestorAdded(javax.swing.event.AncestorEvent evt) {
+                scanMaxFilesChanged(evt);
+            }
+            public void ancestorRemoved(javax.swing.event.AncestorEvent evt) {
+            }
+            public void ancestorMoved(javax.swing.event.AncestorEvent evt) {
+            }
+        });
+
+        jLabel7.setLabelFor(jSpinner5);
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel7, org.openide.util.NbBundle.getMessage(BasicCustomizer.class, "BasicCustomizer.jLabel7.text")); // NOI18N
+        jLabel7.setToolTipText(org.openide.util.NbBundle.getMessage(BasicCustomizer.class, "BasicCustomizer.jLabel7.toolTipText")); // NOI18N
+
+        jSpinner5.setModel(new javax.swing.SpinnerNumberModel(30, 1, 600, 1));
+        jSpinner5.setValue(prj.getScanMaxSeconds());
+        jSpinner5.addAncestorListener(new javax.swing.event.AncestorListener() {
+            public void ancestorAdded(javax.swing.event.AncestorEvent evt) {
+                scanMaxSecondsChanged(evt);
+            }
+            public void ancestorRemoved(javax.swing.event.AncestorEvent evt) {
+            }
+            public void ancestorMoved(javax.swing.event.AncestorEvent evt) {
+            }
+        });
+
+        jLabel8.setLabelFor(jTextField2);
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel8, org.openide.util.NbBundle.getMessage(BasicCustomizer.class, "BasicCustomizer.jLabel8.text")); // NOI18N
+        jLabel8.setToolTipText(org.openide.util.NbBundle.getMessage(BasicCustomizer.class, "BasicCustomizer.jLabel8.toolTipText")); // NOI18N
+
+        jTextField2.setText(org.openide.util.NbBundle.getMessage(BasicCustomizer.class, "BasicCustomizer.jTextField2.text")); // NOI18N
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -127,15 +212,23 @@ public class BasicCustomizer extends javax.swing.JPanel implements FocusListener
                     .addComponent(jLabel1)
                     .addComponent(jLabel2)
                     .addComponent(jLabel3)
-                    .addComponent(jLabel4))
+                    .addComponent(jLabel4)
+                    .addComponent(jLabel5)
+                    .addComponent(jLabel6)
+                    .addComponent(jLabel7)
+                    .addComponent(jLabel8))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(jTextField1)
                     .addComponent(jComboBox1, 0, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                    .addComponent(jTextField2)
                     .addGroup(layout.createSequentialGroup()
                         .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                             .addComponent(jSpinner2, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
-                            .addComponent(jSpinner1, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                            .addComponent(jSpinner1, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(jSpinner3, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(jSpinner4, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(jSpinner5, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                         .addGap(0, 544, Short.MAX_VALUE)))
                 .addContainerGap())
         );
@@ -158,7 +251,23 @@ public class BasicCustomizer extends javax.swing.JPanel implements FocusListener
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(jLabel4)
                     .addComponent(jSpinner2, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
-                .addContainerGap(133, Short.MAX_VALUE))
+                .addGap(18, 18, 18)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel5)
+                    .addComponent(jSpinner3, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel6)
+                    .addComponent(jSpinner4, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel7)
+                    .addComponent(jSpinner5, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addGap(18, 18, 18)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel8)
+                    .addComponent(jTextField2, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addContainerGap(12, Short.MAX_VALUE))
         );
     }// </editor-fold>//GEN-END:initComponents
 
@@ -177,15 +286,38 @@ public class BasicCustomizer extends javax.swing.JPanel implements FocusListener
         prj.setMaxFavorites(val);
     }//GEN-LAST:event_maxFavoritesChanged
 
+    private void scanMaxDepthChanged(javax.swing.event.AncestorEvent evt) {//GEN-FIRST:event_scanMaxDepthChanged
+        int val = (Integer) jSpinner3.getValue();
+        prj.setScanMaxDepth(val);
+    }//GEN-LAST:event_scanMaxDepthChanged
+
+    private void scanMaxFilesChanged(javax.swing.event.AncestorEvent evt) {//GEN-FIRST:event_scanMaxFilesChanged
+        int val = (Integer) jSpinner4.getValue();
+        prj.setScanMaxFiles(val);
+    }//GEN-LAST:event_scanMaxFilesChanged
+
+    private void scanMaxSecondsChanged(javax.swing.event.AncestorEvent evt) {//GEN-FIRST:event_scanMaxSecondsChanged
+        int val = (Integer) jSpinner5.getValue();
+        prj.setScanMaxSeconds(val);
+    }//GEN-LAST:event_scanMaxSecondsChanged
+
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JComboBox jComboBox1;
     private javax.swing.JLabel jLabel1;
     private javax.swing.JLabel jLabel2;
     private javax.swing.JLabel jLabel3;
     private javax.swing.JLabel jLabel4;
+    private javax.swing.JLabel jLabel5;
+    private javax.swing.JLabel jLabel6;
+    private javax.swing.JLabel jLabel7;
+    private javax.swing.JLabel jLabel8;
     private javax.swing.JSpinner jSpinner1;
     private javax.swing.JSpinner jSpinner2;
+    private javax.swing.JSpinner jSpinner3;
+    private javax.swing.JSpinner jSpinner4;
+    private javax.swing.JSpinner jSpinner5;
     private javax.swing.JTextField jTextField1;
+    private javax.swing.JTextField jTextField2;
     // End of variables declaration//GEN-END:variables
 
     @Override
@@ -209,10 +341,21 @@ public class BasicCustomizer extends javax.swing.JPanel implements FocusListener
 
     @Override
     public void changedUpdate(DocumentEvent de) {
-        task.schedule(1000);
+        if (de.getDocument() == jTextField2.getDocument()) {
+            exclusionsTask.schedule(1000);
+        } else {
+            task.schedule(1000);
+        }
     }
 
     private final Task task = RequestProcessor.getDefault().create(this);
+    private final Task exclusionsTask = RequestProcessor.getDefault().create(new Runnable() {
+
+        @Override
+        public void run() {
+            prj.setExclusionPatterns(jTextField2.getText());
+        }
+    });
     @Override
     public void run() {
         prj.setDisplayName(jTextField1.getText());
@@ -0,0 +1,194 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Files and folders an ad hoc project neither shows nor scans, given as glob
+ * patterns such as <code>node_modules</code> or <code>build/*.class</code>
+ * and compiled once into a set of literal names plus one regular expression
+ * for everything with wildcards. Patterns without a slash match a name at
+ * any depth; patterns with one match a path relative to the project folder.
+ * Everything in an excluded folder is excluded with it, so callers check
+ * folders when they reach them and never list the excluded ones.
+ *
+ * @author Tim Boudreau
+ */
+public final class Exclusions {
+
+    /**
+     * Nothing, so that projects which showed everything before exclusions
+     * existed still do; folders such as node_modules are excluded by the
+     * user, in the customizer.
+     */
+    public static final String DEFAULT_PATTERNS = "";
+    public static final Exclusions DEFAULT = compile(DEFAULT_PATTERNS);
+    private final String patterns;
+    private final Set<String> names;
+    private final Pattern namePattern;
+    private final Pattern pathPattern;
+
+    private Exclusions(String patterns, Set<String> names, Pattern namePattern, Pattern pathPattern) {
+        this.patterns = patterns;
+        this.names = names;
+        this.namePattern = namePattern;
+        this.pathPattern = pathPattern;
+    }
+
+    /**
+     * Compile a list of glob patterns separated by whitespace or commas.
+     */
+    public static Exclusions compile(String patterns) {
+        Set<String> names = new HashSet<>();
+        StringBuilder nameRegex = new StringBuilder();
+        StringBuilder pathRegex = new StringBuilder();
+        StringBuilder normalized = new StringBuilder();
+        for (String glob : patterns.split("[\\s,]+")) {
+            while (glob.startsWith("/")) {
+                glob = glob.substring(1);
+            }
+            while (glob.endsWith("/")) {
+                glob = glob.substring(0, glob.length() - 1);
+            }
+            if (glob.isEmpty()) {
+                continue;
+            }
+            if (normalized.length() > 0) {
+                normalized.append(' ');
+            }
+            normalized.append(glob);
+            boolean wildcards = glob.indexOf('*') >= 0 || glob.indexOf('?') >= 0;
+            if (glob.indexOf('/') >= 0) {
+                append(pathRegex, glob);
+            } else if (wildcards) {
+                append(nameRegex, glob);
+            } else {
+                names.add(glob);
+            }
+        }
+        return new Exclusions(normalized.toString(), names,
+                nameRegex.length() == 0 ? null : Pattern.compile(nameRegex.toString()),
+                pathRegex.length() == 0 ? null : Pattern.compile(pathRegex.toString()));
+    }
+
+    private static void append(StringBuilder regex, String glob) {
+        if (regex.length() > 0) {
+            regex.append('|');
+        }
+        regex.append("(?:");
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                if (c == '?') {
+                    regex.append("[^/]");
+                } else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i++;
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        regex.append(')');
+    }
+
+    /**
+     * The patterns, normalized and separated by spaces.
+     */
+    public String patterns() {
+        return patterns;
+    }
+
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    /**
+     * Whether any pattern contains a slash, and so depends on which folder
+     * paths are relative to.
+     */
+    public boolean hasPathPatterns() {
+        return pathPattern != null;
+    }
+
+    /**
+     * Whether a file or folder is excluded by its own name or path; folders
+     * above it are not checked.
+     *
+     * @param relativePath The path relative to the project folder, with /
+     * as the separator
+     */
+    public boolean isExcluded(String relativePath) {
+        if (relativePath.isEmpty()) {
+            return false;
+        }
+        int ix = relativePath.lastIndexOf('/');
+        String name = ix < 0 ? relativePath : relativePath.substring(ix + 1);
+        if (names.contains(name)) {
+            return true;
+        }
+        if (namePattern != null && namePattern.matcher(name).matches()) {
+            return true;
+        }
+        return pathPattern != null && pathPattern.matcher(relativePath).matches();
+    }
+
+    /**
+     * Whether a file or folder, or any folder above it, is excluded.
+     */
+    public boolean isExcludedOrInExcludedFolder(String relativePath) {
+        if (isEmpty()) {
+            return false;
+        }
+        for (int ix = relativePath.indexOf('/'); ix >= 0; ix = relativePath.indexOf('/', ix + 1)) {
+            if (isExcluded(relativePath.substring(0, ix))) {
+                return true;
+            }
+        }
+        return isExcluded(relativePath);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Exclusions && ((Exclusions) o).patterns.equals(patterns);
+    }
+
+    @Override
+    public int hashCode() {
+        return patterns.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return patterns;
+    }
+}
@@ -18,30 +18,47 @@
  CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
 package com.timboudreau.adhoc.project;
 
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.openide.util.Parameters;
 
 /**
+ * A file in a project's favorites. Favorites are ranked by frecency: each
+ * use adds one to a score which halves every HALF_LIFE, so files used a lot
+ * long ago drop below ones used now and then lately. The score is stored as
+ * of the last use and decayed when next used, so nothing needs rewriting as
+ * time passes; since all scores decay at the same rate, favorites can be
+ * ranked by a key that does not depend on the current time.
  *
  * @author Tim Boudreau
  */
 public class Favorite implements Comparable<Favorite> {
 
-    private static final Pattern PAT = Pattern.compile("(-?\\d+):(.*)$");
+    static final long HALF_LIFE = TimeUnit.DAYS.toMillis(14);
+    private static final Pattern PAT = Pattern.compile("(-?\\d+),([0-9.E-]+),(\\d+):(.*)$");
+    // stored by older versions
+    private static final Pattern OLD_PAT = Pattern.compile("(-?\\d+):(.*)$");
     int count;
+    double score;
+    long lastAccess;
     final String relPath;
 
     static Favorite create(String data) {
-        Matcher m = PAT.matcher(data);
-        if (m.find()) {
-            try {
+        try {
+            Matcher m = PAT.matcher(data);
+            if (m.matches()) {
+                return new Favorite(Integer.parseInt(m.group(1)), Double.parseDouble(m.group(2)),
+                        Long.parseLong(m.group(3)), m.group(4));
+            }
+            m = OLD_PAT.matcher(data);
+            if (m.find()) {
                 int pos = Integer.parseInt(m.group(1));
                 String pth = m.group(2);
                 return new Favorite(pos, pth);
-            } catch (NumberFormatException e) {
-                return null;
             }
+        } catch (NumberFormatException e) {
+            return null;
         }
         return null;
     }
@@ -51,16 +68,56 @@ public class Favorite implements Comparable<Favorite> {
     }
 
     public Favorite(int count, String relPath) {
+        this(count, Math.max(0, count), System.currentTimeMillis(), relPath);
+    }
+
+    Favorite(int count, double score, long lastAccess, String relPath) {
         Parameters.notNull("relPath", relPath);
         this.count = count;
+        this.score = score;
+        this.lastAccess = lastAccess;
         this.relPath = relPath;
     }
 
+    /**
+     * The score decayed to a point in time.
+     */
+    double score(long now) {
+        return score * Math.pow(2, -(double) Math.max(0, now - lastAccess) / HALF_LIFE);
+    }
+
+    void used(long now) {
+        score = score(now) + 1;
+        lastAccess = now;
+        count++;
+    }
+
+    /**
+     * The base 2 logarithm of what the score would be at the epoch; ranks
+     * favorites the same way their current scores do.
+     */
+    double rank() {
+        return rank(score, lastAccess);
+    }
+
+    static double rank(double score, long lastAccess) {
+        return score <= 0 ? Double.NEGATIVE_INFINITY
+                : Math.log(score) / Math.log(2) + (double) lastAccess / HALF_LIFE;
+    }
+
+    /**
+     * Set the score so the rank is a given value.
+     */
+    void setRank(double rank, long now) {
+        lastAccess = now;
+        score = Math.pow(2, rank - (double) now / HALF_LIFE);
+    }
+
     @Override
     public int compareTo(Favorite t) {
-        Integer a = count;
-        Integer b = t.count;
-        return b.compareTo(a);
+        int result = Double.compare(t.rank(), rank());
+        // consistent with equals, so favorites can be kept in sorted sets
+        return result != 0 ? result : relPath.compareTo(t.relPath);
     }
 
     public boolean equals(Object o) {
@@ -72,6 +129,6 @@ public class Favorite implements Comparable<Favorite> {
     }
 
     public String toString() {
-        return count + ":" + relPath;
+        return count + "," + score + "," + lastAccess + ":" + relPath;
     }
 }
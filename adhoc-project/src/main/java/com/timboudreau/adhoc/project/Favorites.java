@@ -0,0 +1,720 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+import javax.swing.event.ChangeListener;
+import org.openide.filesystems.FileChangeAdapter;
+import org.openide.filesystems.FileChangeListener;
+import org.openide.filesystems.FileEvent;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileRenameEvent;
+import org.openide.filesystems.FileUtil;
+import org.openide.util.ChangeSupport;
+import org.openide.util.Exceptions;
+import org.openide.util.RequestProcessor;
+
+/**
+ * The favorites of a project, held in memory once loaded, so that opening
+ * a file just bumps a counter. Changed favorites are written back to the
+ * project's preferences in the background, SAVE_DELAY after the first
+ * change, so a burst of opens costs one write.
+ * <p/>
+ * They are stored as a single record of <code>count:path</code> lines under
+ * one key of the project's preferences node (split across further keys
+ * past the length limit of a preferences value), so loading or saving them
+ * reads or writes one file. Favorites stored the old way, as a child node
+ * per file, are moved into the record when first loaded.
+ * <p/>
+ * Only the HOT_SIZE best ranked favorites are kept in order, so listing
+ * them does not sort every file ever opened; the rest are a cold tail that
+ * a favorite is promoted from when its rank passes the lowest in the hot
+ * set. When saved, cold favorites whose score has decayed to nothing are
+ * dropped and the tail is cut to COLD_SIZE, so the record stays bounded.
+ * <p/>
+ * Favorites follow their files: a recursive listener on the project folder
+ * (skipping excluded and hidden folders, as the views of it do) rewrites their paths when a file or folder is renamed, and drops them
+ * when it is deleted. Since moves are seen as a delete and a create, the
+ * favorites of a deleted file or folder are held for MOVE_WINDOW, and given
+ * to a file or folder of the same name created in that time.
+ * <p/>
+ * Opening a file only counts the use in PendingUses, without locking; the
+ * uses are added to the favorites by the task which saves them, or when
+ * the favorites are next listed. Everything else happens under this
+ * object's lock, and only the save task writes the record.
+ *
+ * @author Tim Boudreau
+ */
+final class Favorites extends FileChangeAdapter implements Runnable {
+
+    private static final RequestProcessor rp = new RequestProcessor(Favorites.class.getSimpleName(), 1);
+    private static final int SAVE_DELAY = 1000;
+    private static final String KEY = "favorites";
+    private static final String FORMATTING_NODE = "__formatting";
+    // More than the most favorites the customizer lets a project show
+    static final int HOT_SIZE = 128;
+    static final int COLD_SIZE = 512;
+    // A single use ten weeks ago
+    private static final double MIN_SCORE = 1D / 32;
+    private static final int MOVE_WINDOW = 2000;
+    private final AdhocProject prj;
+    private final RequestProcessor.Task saveTask = rp.create(this);
+    // Removed favorites stay in here with a negative count, so they are
+    // not brought back by a few more opens
+    private Map<String, Favorite> byPath;
+    // Never change the rank of a favorite while it is in here
+    private final TreeSet<Favorite> hot = new TreeSet<>();
+    private final PendingUses pending = new PendingUses();
+    private final PendingUses.Sink sink = new PendingUses.Sink() {
+        @Override
+        public void used(String relPath, int times, long lastUse) {
+            use(relPath, times, lastUse);
+        }
+    };
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private boolean dirty;
+    private int max;
+    // Favorites of deleted files and folders, by the path deleted, oldest
+    // first
+    private final Map<String, Deleted> deleted = new LinkedHashMap<>();
+    // Child nodes holding favorites in the old format, removed once the
+    // favorites are saved as a record
+    private final List<String> migrated = new ArrayList<>();
+    private final RequestProcessor.Task expireTask = rp.create(new Runnable() {
+        @Override
+        public void run() {
+            expire();
+        }
+    });
+    private final ChangeSupport supp = new ChangeSupport(this);
+    private FileObject listeningTo;
+    // the project folder on disk, if the listener was added through it
+    private File listeningToFile;
+    private FileChangeListener listener;
+
+    Favorites(AdhocProject prj) {
+        this.prj = prj;
+    }
+
+    /**
+     * Listen for favorites changing other than through this class's
+     * methods - when files they point to are renamed, moved or deleted.
+     */
+    void addChangeListener(ChangeListener l) {
+        supp.addChangeListener(l);
+    }
+
+    void removeChangeListener(ChangeListener l) {
+        supp.removeChangeListener(l);
+    }
+
+    private Map<String, Favorite> favorites() {
+        assert Thread.holdsLock(this);
+        if (byPath == null) {
+            byPath = new HashMap<>();
+            File dir = FileUtil.toFile(prj.getProjectDirectory());
+            boolean gone = false;
+            for (Favorite f : load()) {
+                // deleted while the IDE was not running
+                if (dir != null && !new File(dir, f.relPath).exists()) {
+                    gone = true;
+                    continue;
+                }
+                byPath.put(f.relPath, f);
+                max = Math.max(max, f.count);
+                offer(f);
+            }
+            if (compact(System.currentTimeMillis()) || gone || !migrated.isEmpty()) {
+                changed();
+            }
+        }
+        listen();
+        return byPath;
+    }
+
+    private void listen() {
+        FileObject dir = prj.getProjectDirectory();
+        if (!dir.equals(listeningTo)) {
+            // new, or the project was renamed
+            if (listeningToFile != null) {
+                FileUtil.removeRecursiveListener(listener, listeningToFile);
+            } else if (listeningTo != null) {
+                listeningTo.removeRecursiveListener(listener);
+            }
+            listener = FileUtil.weakFileChangeListener(this, dir);
+            listeningTo = dir;
+            listeningToFile = FileUtil.toFile(dir);
+            if (listeningToFile != null) {
+                // A plain recursive listener would hold a FileObject for
+                // every folder, node_modules and ignored output included
+                ListenFilter filter = new ListenFilter(listeningToFile, dir);
+                FileUtil.addRecursiveListener(listener, listeningToFile, filter, filter);
+            } else {
+                dir.addRecursiveListener(listener);
+            }
+        }
+    }
+
+    /**
+     * Which folders to follow files in: the ones the project shows.
+     */
+    private final class ListenFilter implements FileFilter, Callable<Boolean> {
+
+        private final String path;
+        private final FileObject dir;
+
+        ListenFilter(File file, FileObject dir) {
+            this.path = file.getPath() + File.separatorChar;
+            this.dir = dir;
+        }
+
+        @Override
+        public boolean accept(File file) {
+            String p = file.getPath();
+            if (!p.startsWith(path)) {
+                return false;
+            }
+            String rel = p.substring(path.length()).replace(File.separatorChar, '/');
+            return !prj.getExclusions().isExcludedOrInExcludedFolder(rel)
+                    && prj.getVisibility().isVisible(file);
+        }
+
+        @Override
+        public Boolean call() {
+            // the project was renamed, and a new listener added
+            return !dir.equals(prj.getProjectDirectory());
+        }
+    }
+
+    /**
+     * Put a favorite which is not in the hot set into it, if it ranks above
+     * the lowest there, moving that one to the cold tail.
+     */
+    private void offer(Favorite f) {
+        if (f.count <= 0) {
+            return;
+        }
+        if (hot.size() < HOT_SIZE) {
+            hot.add(f);
+        } else if (f.compareTo(hot.last()) < 0) {
+            hot.pollLast();
+            hot.add(f);
+        }
+    }
+
+    private boolean compact(long now) {
+        return compact(byPath, hot, now);
+    }
+
+    /**
+     * Drop cold favorites which have decayed away, and the lowest ranked
+     * ones past COLD_SIZE. Removed favorites are kept however long ago they
+     * were used, or the next open would bring them back; only the least
+     * recently used of them past COLD_SIZE are dropped.
+     *
+     * @return true if anything was dropped
+     */
+    static boolean compact(Map<String, Favorite> byPath, Collection<Favorite> hot, long now) {
+        List<Favorite> cold = new ArrayList<>();
+        List<Favorite> removed = new ArrayList<>();
+        boolean result = false;
+        for (Iterator<Favorite> it = byPath.values().iterator(); it.hasNext();) {
+            Favorite f = it.next();
+            if (f.count < 0) {
+                removed.add(f);
+            } else if (!hot.contains(f)) {
+                if (f.score(now) < MIN_SCORE) {
+                    it.remove();
+                    result = true;
+                } else {
+                    cold.add(f);
+                }
+            }
+        }
+        if (cold.size() > COLD_SIZE) {
+            Collections.sort(cold);
+            for (Favorite f : cold.subList(COLD_SIZE, cold.size())) {
+                byPath.remove(f.relPath);
+            }
+            result = true;
+        }
+        if (removed.size() > COLD_SIZE) {
+            Collections.sort(removed, new Comparator<Favorite>() {
+                @Override
+                public int compare(Favorite a, Favorite b) {
+                    return Long.compare(b.lastAccess, a.lastAccess);
+                }
+            });
+            for (Favorite f : removed.subList(COLD_SIZE, removed.size())) {
+                byPath.remove(f.relPath);
+            }
+            result = true;
+        }
+        return result;
+    }
+
+    /**
+     * The favorites with a positive count, most used first.
+     */
+    synchronized List<Favorite> list() {
+        return list(HOT_SIZE);
+    }
+
+    /**
+     * The best ranked favorites with a positive count, most used first.
+     *
+     * @param count The most to return, up to HOT_SIZE
+     */
+    synchronized List<Favorite> list(int count) {
+        favorites();
+        drain();
+        List<Favorite> result = new ArrayList<>(Math.min(count, hot.size()));
+        for (Favorite f : hot) {
+            if (result.size() == count) {
+                break;
+            }
+            // copies, so counts do not change under the caller
+            result.add(new Favorite(f.count, f.score, f.lastAccess, f.relPath));
+        }
+        return result;
+    }
+
+    /**
+     * Record that a file was opened.
+     *
+     * @param explicit If true, move it to the top of the favorites
+     */
+    void used(String relPath, boolean explicit) {
+        long now = System.currentTimeMillis();
+        if (explicit) {
+            putOnTop(relPath, now);
+        } else {
+            pending.add(relPath, now);
+            schedule();
+        }
+    }
+
+    private synchronized void putOnTop(String relPath, long now) {
+        favorites();
+        drain();
+        Favorite f = favorite(relPath, now);
+        double topRank = hot.isEmpty() ? Double.NEGATIVE_INFINITY : hot.first().rank();
+        hot.remove(f);
+        // Rank it above the top one - twice its score
+        f.count = max + 1;
+        f.setRank(Math.max(topRank + 1, Favorite.rank(1, now)), now);
+        max = Math.max(max, f.count);
+        offer(f);
+        changed();
+    }
+
+    private Favorite favorite(String relPath, long now) {
+        Favorite f = byPath.get(relPath);
+        if (f == null) {
+            f = new Favorite(0, 0, now, relPath);
+            byPath.put(relPath, f);
+        }
+        return f;
+    }
+
+    private void use(String relPath, int times, long lastUse) {
+        Favorite f = favorite(relPath, lastUse);
+        hot.remove(f);
+        for (int i = 0; i < times; i++) {
+            f.used(lastUse);
+        }
+        max = Math.max(max, f.count);
+        offer(f);
+    }
+
+    /**
+     * Add the pending uses to the favorites; they are already due to be
+     * saved.
+     */
+    private void drain() {
+        assert Thread.holdsLock(this);
+        if (byPath != null && pending.drain(sink)) {
+            dirty = true;
+        }
+    }
+
+    synchronized void remove(String relPath) {
+        favorites();
+        drain();
+        Favorite f = byPath.get(relPath);
+        if (f != null) {
+            boolean wasHot = hot.remove(f);
+            f.count = -4;
+            if (wasHot) {
+                refill();
+            }
+            changed();
+        }
+    }
+
+    synchronized void clear() {
+        favorites();
+        drain();
+        byPath.clear();
+        hot.clear();
+        deleted.clear();
+        max = 0;
+        changed();
+    }
+
+    /**
+     * Take the favorites at or below a path out of the favorites.
+     */
+    private List<Favorite> take(String path) {
+        List<Favorite> result = new ArrayList<>();
+        String prefix = path + '/';
+        for (Iterator<Favorite> it = byPath.values().iterator(); it.hasNext();) {
+            Favorite f = it.next();
+            if (f.relPath.equals(path) || f.relPath.startsWith(prefix)) {
+                hot.remove(f);
+                it.remove();
+                result.add(f);
+            }
+        }
+        if (!result.isEmpty()) {
+            refill();
+        }
+        return result;
+    }
+
+    /**
+     * Put favorites taken from below one path back below another.
+     */
+    private void put(String oldPath, String newPath, List<Favorite> moved) {
+        for (Favorite f : moved) {
+            Favorite nue = new Favorite(f.count, f.score, f.lastAccess,
+                    newPath + f.relPath.substring(oldPath.length()));
+            Favorite old = byPath.put(nue.relPath, nue);
+            if (old != null) {
+                hot.remove(old);
+            }
+            offer(nue);
+        }
+        refill();
+    }
+
+    /**
+     * Fill up the hot set from the cold tail, after favorites were taken out
+     * of it.
+     */
+    private void refill() {
+        while (hot.size() < HOT_SIZE) {
+            // Rare enough that looking through the tail is fine
+            Favorite best = null;
+            for (Favorite c : byPath.values()) {
+                if (c.count > 0 && !hot.contains(c)
+                        && (best == null || c.compareTo(best) < 0)) {
+                    best = c;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            hot.add(best);
+        }
+    }
+
+    private static String name(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public void fileRenamed(FileRenameEvent fe) {
+        FileObject fo = fe.getFile();
+        String oldName = fe.getExt() == null || fe.getExt().isEmpty()
+                ? fe.getName() : fe.getName() + '.' + fe.getExt();
+        synchronized (this) {
+            String newPath = byPath == null ? null : FileUtil.getRelativePath(listeningTo, fo);
+            if (newPath == null) {
+                return;
+            }
+            drain();
+            int ix = newPath.lastIndexOf('/');
+            String oldPath = ix < 0 ? oldName : newPath.substring(0, ix + 1) + oldName;
+            List<Favorite> moved = take(oldPath);
+            put(oldPath, newPath, moved);
+            // or a file saved by writing a new one and renaming it over
+            // the old one
+            if (!created(newPath, fo.isFolder()) && moved.isEmpty()) {
+                return;
+            }
+            changed();
+        }
+        supp.fireChange();
+    }
+
+    @Override
+    public void fileDeleted(FileEvent fe) {
+        synchronized (this) {
+            String path = byPath == null ? null
+                    : FileUtil.getRelativePath(listeningTo, fe.getFile());
+            if (path == null) {
+                return;
+            }
+            drain();
+            List<Favorite> gone = take(path);
+            if (gone.isEmpty()) {
+                return;
+            }
+            deleted.remove(path);
+            deleted.put(path, new Deleted(gone, System.currentTimeMillis()));
+            expireTask.schedule(MOVE_WINDOW);
+            changed();
+        }
+        supp.fireChange();
+    }
+
+    @Override
+    public void fileDataCreated(FileEvent fe) {
+        synchronized (this) {
+            String path = byPath == null || deleted.isEmpty() ? null
+                    : FileUtil.getRelativePath(listeningTo, fe.getFile());
+            if (path == null || !created(path, fe.getFile().isFolder())) {
+                return;
+            }
+            changed();
+        }
+        supp.fireChange();
+    }
+
+    @Override
+    public void fileFolderCreated(FileEvent fe) {
+        fileDataCreated(fe);
+    }
+
+    /**
+     * Give a file or folder just created the favorites of the most recently
+     * deleted one with the same name, if it was moved there.
+     */
+    private boolean created(String path, boolean folder) {
+        String from = movedFrom(deleted.keySet(), path, folder);
+        if (from == null) {
+            return false;
+        }
+        String prefix = from + '/';
+        for (Iterator<Map.Entry<String, Deleted>> it = deleted.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Deleted> e = it.next();
+            if (e.getKey().equals(from) || e.getKey().startsWith(prefix)) {
+                put(from, path, e.getValue().favorites);
+                it.remove();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the path a file or folder just created may have been moved from.
+     *
+     * @param deleted Paths recently deleted, oldest first
+     * @return The latest path deleted with the same name, or null
+     */
+    static String movedFrom(Iterable<String> deleted, String path, boolean folder) {
+        String name = name(path);
+        String from = null;
+        for (String del : deleted) {
+            if (name(del).equals(name)) {
+                from = del;
+            } else if (folder) {
+                // files in a moved folder can be reported deleted before
+                // the folder is
+                int ix = ('/' + del).indexOf('/' + name + '/');
+                if (ix >= 0) {
+                    from = del.substring(0, ix + name.length());
+                }
+            }
+        }
+        return from;
+    }
+
+    private synchronized void expire() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Deleted> it = deleted.values().iterator(); it.hasNext();) {
+            Deleted d = it.next();
+            if (now - d.when < MOVE_WINDOW) {
+                expireTask.schedule((int) (MOVE_WINDOW - (now - d.when)));
+                break;
+            }
+            it.remove();
+        }
+    }
+
+    private static final class Deleted {
+
+        final List<Favorite> favorites;
+        final long when;
+
+        Deleted(List<Favorite> favorites, long when) {
+            this.favorites = favorites;
+            this.when = when;
+        }
+    }
+
+    private void changed() {
+        dirty = true;
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            saveTask.schedule(SAVE_DELAY);
+        }
+    }
+
+    @Override
+    public void run() {
+        scheduled.set(false);
+        String record;
+        List<String> oldNodes;
+        synchronized (this) {
+            if (!pending.isEmpty()) {
+                favorites();
+                drain();
+            }
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            compact(System.currentTimeMillis());
+            record = encode(byPath.values());
+            oldNodes = new ArrayList<>(migrated);
+            migrated.clear();
+        }
+        try {
+            Preferences forProject = prj.preferences(true);
+            write(forProject, record);
+            for (String ch : oldNodes) {
+                forProject.node(ch).removeNode();
+            }
+        } catch (BackingStoreException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+    }
+
+    private List<Favorite> load() {
+        try {
+            Preferences forProject = prj.preferences(false);
+            if (forProject != null) {
+                String record = read(forProject);
+                return record == null ? migrate(forProject, migrated) : decode(record);
+            }
+        } catch (BackingStoreException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Read favorites stored as one child node per file, adding the names of
+     * the nodes to delete once they are saved as a record.
+     */
+    private static List<Favorite> migrate(Preferences forProject, List<String> nodes) throws BackingStoreException {
+        List<Favorite> favorites = new ArrayList<>();
+        for (String ch : forProject.childrenNames()) {
+            if (FORMATTING_NODE.equals(ch)) {
+                continue;
+            }
+            Preferences forFile = forProject.node(ch);
+            String name = forFile.get("name", null);
+            if (name != null) {
+                favorites.add(new Favorite(forFile.getInt("value", 0), name));
+                nodes.add(ch);
+            }
+        }
+        return favorites;
+    }
+
+    static String encode(Collection<Favorite> favorites) {
+        StringBuilder sb = new StringBuilder();
+        for (Favorite f : favorites) {
+            if (f.relPath.indexOf('\n') < 0) {
+                if (sb.length() > 0) {
+                    sb.append('\n');
+                }
+                sb.append(f);
+            }
+        }
+        return sb.toString();
+    }
+
+    static List<Favorite> decode(String record) {
+        List<Favorite> result = new ArrayList<>();
+        for (String line : record.split("\n")) {
+            Favorite f = Favorite.create(line);
+            if (f != null) {
+                result.add(f);
+            }
+        }
+        return result;
+    }
+
+    private static String read(Preferences prefs) {
+        String first = prefs.get(KEY, null);
+        if (first == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(first);
+        for (int i = 1;; i++) {
+            String chunk = prefs.get(KEY + '.' + i, null);
+            if (chunk == null) {
+                return sb.toString();
+            }
+            sb.append(chunk);
+        }
+    }
+
+    private static void write(Preferences prefs, String record) {
+        int i = 0;
+        int start = 0;
+        do {
+            int end = Math.min(record.length(), start + Preferences.MAX_VALUE_LENGTH);
+            if (end < record.length() && Character.isHighSurrogate(record.charAt(end - 1))) {
+                // don't split a surrogate pair
+                end--;
+            }
+            prefs.put(i == 0 ? KEY : KEY + '.' + i, record.substring(start, end));
+            start = end;
+            i++;
+        } while (start < record.length());
+        // left over from a longer record
+        while (prefs.get(KEY + '.' + i, null) != null) {
+            prefs.remove(KEY + '.' + i);
+            i++;
+        }
+    }
+}
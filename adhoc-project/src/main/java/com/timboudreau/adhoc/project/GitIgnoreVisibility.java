@@ -0,0 +1,400 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import javax.swing.event.ChangeListener;
+import org.netbeans.spi.queries.VisibilityQueryImplementation2;
+import org.openide.filesystems.FileChangeAdapter;
+import org.openide.filesystems.FileEvent;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileRenameEvent;
+import org.openide.filesystems.FileUtil;
+import org.openide.util.ChangeSupport;
+
+/**
+ * Hides files matched by .gitignore files in the project, and in folders
+ * above it up to the root of the git checkout it is in. Each folder's rules
+ * are parsed and compiled the first time something in that folder is
+ * checked, and cached until that folder's .gitignore changes. As with git,
+ * rules in deeper .gitignore files override ones above them, later lines
+ * override earlier ones, and ! re-includes what an earlier rule ignored.
+ * Callers check folders as they reach them, so only a file's own path is
+ * matched - everything in an ignored folder is pruned with it.
+ *
+ * @author Tim Boudreau
+ */
+final class GitIgnoreVisibility extends FileChangeAdapter implements VisibilityQueryImplementation2 {
+
+    static final String IGNORE_FILE = ".gitignore";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final AdhocProject prj;
+    private final ChangeSupport supp = new ChangeSupport(this);
+    // Keyed by folder path relative to the base folder
+    private final ConcurrentMap<String, Rules> rules = new ConcurrentHashMap<>();
+    // .gitignore files whose rules have been loaded, present or not
+    private final Set<File> listeningTo
+            = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+    private volatile Base base;
+
+    GitIgnoreVisibility(AdhocProject prj) {
+        this.prj = prj;
+    }
+
+    @Override
+    public boolean isVisible(FileObject fo) {
+        File file = FileUtil.toFile(fo);
+        return file == null || isVisible(file);
+    }
+
+    @Override
+    public boolean isVisible(File file) {
+        Base b = base();
+        if (b == null) {
+            return true;
+        }
+        String path = b.relativePath(file);
+        return path == null || path.isEmpty() || !isIgnored(b, path, file);
+    }
+
+    @Override
+    public void addChangeListener(ChangeListener l) {
+        supp.addChangeListener(l);
+    }
+
+    @Override
+    public void removeChangeListener(ChangeListener l) {
+        supp.removeChangeListener(l);
+    }
+
+    private boolean isIgnored(Base b, String path, File file) {
+        int ix = path.lastIndexOf('/');
+        String name = ix < 0 ? path : path.substring(ix + 1);
+        String folder = ix < 0 ? "" : path.substring(0, ix);
+        // The deepest .gitignore with a matching rule decides
+        for (;;) {
+            Rules r = rulesFor(b, folder);
+            if (r != Rules.NONE) {
+                String sub = folder.isEmpty() ? path : path.substring(folder.length() + 1);
+                Rule rule = r.match(sub, name, file);
+                if (rule != null) {
+                    return !rule.negated;
+                }
+            }
+            if (folder.isEmpty()) {
+                return false;
+            }
+            ix = folder.lastIndexOf('/');
+            folder = ix < 0 ? "" : folder.substring(0, ix);
+        }
+    }
+
+    private Rules rulesFor(Base b, String folder) {
+        Rules result = rules.get(folder);
+        if (result == null) {
+            File dir = folder.isEmpty() ? b.dir
+                    : new File(b.dir, folder.replace('/', File.separatorChar));
+            File ignoreFile = new File(dir, IGNORE_FILE);
+            result = Rules.load(ignoreFile);
+            Rules old = rules.putIfAbsent(folder, result);
+            if (old != null) {
+                result = old;
+            }
+            // Only the folders that have been checked can have rules that
+            // matter, so listen to their .gitignore rather than the tree
+            if (listeningTo.add(ignoreFile)) {
+                FileUtil.addFileChangeListener(this, ignoreFile);
+            }
+        }
+        return result;
+    }
+
+    private Base base() {
+        // Called for every file by parallel tree walks, so only lock when
+        // it needs creating
+        FileObject projectDir = prj.getProjectDirectory();
+        Base result = base;
+        if (result == null || !result.projectDir.equals(projectDir)) {
+            synchronized (this) {
+                result = base;
+                if (result == null || !result.projectDir.equals(projectDir)) {
+                    // new, or the project was renamed
+                    File dir = FileUtil.toFile(projectDir);
+                    if (dir == null) {
+                        return null;
+                    }
+                    rules.clear();
+                    base = result = new Base(projectDir, gitRoot(dir));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The folder whose .gitignore and those below it decide what is
+     * hidden - the root of the git checkout the project is in, or the
+     * project folder - or null if it is not on disk.
+     */
+    File rulesRoot() {
+        Base b = base();
+        return b == null ? null : b.dir;
+    }
+
+    private static File gitRoot(File dir) {
+        for (File f = dir; f != null; f = f.getParentFile()) {
+            if (new File(f, ".git").exists()) {
+                return f;
+            }
+        }
+        return dir;
+    }
+
+    private void changed(FileObject ignoreFile) {
+        Base b = base();
+        File dir = FileUtil.toFile(ignoreFile.getParent());
+        String folder = b == null || dir == null ? null : b.relativePath(dir);
+        if (folder != null) {
+            rules.remove(folder);
+        } else {
+            rules.clear();
+        }
+        supp.fireChange();
+    }
+
+    @Override
+    public void fileDataCreated(FileEvent fe) {
+        if (IGNORE_FILE.equals(fe.getFile().getNameExt())) {
+            changed(fe.getFile());
+        }
+    }
+
+    @Override
+    public void fileChanged(FileEvent fe) {
+        fileDataCreated(fe);
+    }
+
+    @Override
+    public void fileDeleted(FileEvent fe) {
+        fileDataCreated(fe);
+    }
+
+    @Override
+    public void fileRenamed(FileRenameEvent fe) {
+        String oldName = fe.getExt() == null || fe.getExt().isEmpty()
+                ? fe.getName() : fe.getName() + '.' + fe.getExt();
+        if (IGNORE_FILE.equals(oldName) || IGNORE_FILE.equals(fe.getFile().getNameExt())) {
+            changed(fe.getFile());
+        }
+    }
+
+    private static final class Base {
+
+        final FileObject projectDir;
+        final File dir;
+        private final String path;
+
+        Base(FileObject projectDir, File dir) {
+            this.projectDir = projectDir;
+            this.dir = dir;
+            this.path = dir.getPath();
+        }
+
+        String relativePath(File file) {
+            String p = file.getPath();
+            if (!p.startsWith(path)) {
+                return null;
+            }
+            if (p.length() == path.length()) {
+                return "";
+            }
+            if (p.charAt(path.length()) != File.separatorChar) {
+                return null;
+            }
+            String result = p.substring(path.length() + 1);
+            return File.separatorChar == '/' ? result : result.replace(File.separatorChar, '/');
+        }
+    }
+
+    private static final class Rules {
+
+        static final Rules NONE = new Rules(Collections.<Rule>emptyList());
+        private final List<Rule> rules;
+
+        Rules(List<Rule> rules) {
+            this.rules = rules;
+        }
+
+        static Rules load(File file) {
+            if (!file.isFile()) {
+                return NONE;
+            }
+            List<Rule> result = new ArrayList<>();
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    Rule rule = Rule.parse(line);
+                    if (rule != null) {
+                        result.add(rule);
+                    }
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(GitIgnoreVisibility.class.getName()).log(Level.INFO,
+                        "Could not read " + file, ex);
+            }
+            return result.isEmpty() ? NONE : new Rules(result);
+        }
+
+        Rule match(String path, String name, File file) {
+            // the last matching line wins
+            for (int i = rules.size() - 1; i >= 0; i--) {
+                Rule rule = rules.get(i);
+                if (rule.matches(path, name, file)) {
+                    return rule;
+                }
+            }
+            return null;
+        }
+    }
+
+    static final class Rule {
+
+        final Pattern pattern;
+        final boolean negated;
+        final boolean foldersOnly;
+        final boolean anchored;
+
+        Rule(Pattern pattern, boolean negated, boolean foldersOnly, boolean anchored) {
+            this.pattern = pattern;
+            this.negated = negated;
+            this.foldersOnly = foldersOnly;
+            this.anchored = anchored;
+        }
+
+        boolean matches(String path, String name, File file) {
+            // Patterns with no slash match a name at any depth; others match
+            // the path relative to the .gitignore's folder
+            return pattern.matcher(anchored ? path : name).matches()
+                    && (!foldersOnly || file.isDirectory());
+        }
+
+        static Rule parse(String line) {
+            int end = line.length();
+            while (end > 0 && Character.isWhitespace(line.charAt(end - 1))
+                    && !(end > 1 && line.charAt(end - 2) == '\\')) {
+                end--;
+            }
+            line = line.substring(0, end);
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                return null;
+            }
+            boolean negated = false;
+            if (line.charAt(0) == '!') {
+                negated = true;
+                line = line.substring(1);
+            } else if (line.startsWith("\\!") || line.startsWith("\\#")) {
+                line = line.substring(1);
+            }
+            boolean foldersOnly = false;
+            while (line.endsWith("/")) {
+                foldersOnly = true;
+                line = line.substring(0, line.length() - 1);
+            }
+            if (line.isEmpty()) {
+                return null;
+            }
+            boolean anchored = line.indexOf('/') >= 0;
+            if (line.charAt(0) == '/') {
+                line = line.substring(1);
+            }
+            return new Rule(Pattern.compile(toRegex(line)), negated, foldersOnly, anchored);
+        }
+
+        private static String toRegex(String glob) {
+            StringBuilder sb = new StringBuilder();
+            int len = glob.length();
+            for (int i = 0; i < len; i++) {
+                char c = glob.charAt(i);
+                switch (c) {
+                    case '*':
+                        boolean atStart = i == 0 || glob.charAt(i - 1) == '/';
+                        if (i + 1 < len && glob.charAt(i + 1) == '*' && atStart) {
+                            if (i + 2 == len) {
+                                // trailing /** - everything inside
+                                sb.append(".*");
+                                i++;
+                                break;
+                            } else if (glob.charAt(i + 2) == '/') {
+                                // **/ - any number of folders, including none
+                                sb.append("(?:.*/)?");
+                                i += 2;
+                                break;
+                            }
+                        }
+                        sb.append("[^/]*");
+                        while (i + 1 < len && glob.charAt(i + 1) == '*') {
+                            i++;
+                        }
+                        break;
+                    case '?':
+                        sb.append("[^/]");
+                        break;
+                    case '[':
+                        int close = glob.indexOf(']', i + 2);
+                        if (close < 0) {
+                            sb.append("\\[");
+                        } else {
+                            String body = glob.substring(i + 1, close);
+                            if (body.startsWith("!")) {
+                                body = '^' + body.substring(1);
+                            }
+                            sb.append('[').append(body.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                            i = close;
+                        }
+                        break;
+                    case '\\':
+                        if (i + 1 < len) {
+                            sb.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                        }
+                        break;
+                    default:
+                        if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+                            sb.append('\\');
+                        }
+                        sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uses of files not yet added to the favorites, counted per file without
+ * locking, so opening files never waits for the favorites to be loaded,
+ * ranked or saved. A counter is closed when drained, and a use which finds
+ * its counter closed starts a new one, so no use is lost or counted twice.
+ *
+ * @author Tim Boudreau
+ */
+final class PendingUses {
+
+    private final ConcurrentMap<String, Uses> uses = new ConcurrentHashMap<>();
+
+    interface Sink {
+
+        void used(String relPath, int times, long lastUse);
+    }
+
+    void add(String relPath, long now) {
+        for (;;) {
+            Uses u = uses.get(relPath);
+            if (u == null) {
+                Uses nue = new Uses();
+                u = uses.putIfAbsent(relPath, nue);
+                if (u == null) {
+                    u = nue;
+                }
+            }
+            if (u.add(now)) {
+                return;
+            }
+            // drained meanwhile
+            uses.remove(relPath, u);
+        }
+    }
+
+    boolean isEmpty() {
+        return uses.isEmpty();
+    }
+
+    /**
+     * Pass the uses counted so far to a sink, and forget them.
+     *
+     * @return true if there were any
+     */
+    boolean drain(Sink sink) {
+        boolean result = false;
+        for (Iterator<Map.Entry<String, Uses>> it = uses.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Uses> e = it.next();
+            Uses u = e.getValue();
+            int times = u.close();
+            uses.remove(e.getKey(), u);
+            if (times > 0) {
+                sink.used(e.getKey(), times, u.last);
+                result = true;
+            }
+        }
+        return result;
+    }
+
+    private static final class Uses {
+
+        // negative once drained
+        private final AtomicInteger count = new AtomicInteger();
+        volatile long last;
+
+        boolean add(long now) {
+            if (now > last) {
+                last = now;
+            }
+            for (;;) {
+                int c = count.get();
+                if (c < 0) {
+                    return false;
+                }
+                if (count.compareAndSet(c, c + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        int close() {
+            return count.getAndSet(-1);
+        }
+    }
+}
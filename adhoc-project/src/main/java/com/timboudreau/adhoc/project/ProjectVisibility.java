@@ -0,0 +1,124 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.event.ChangeListener;
+import org.netbeans.api.queries.VisibilityQuery;
+import org.netbeans.spi.queries.VisibilityQueryImplementation;
+import org.netbeans.spi.queries.VisibilityQueryImplementation2;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openide.util.Lookup;
+
+/**
+ * Whether a file in a project should be shown: the global VisibilityQuery,
+ * plus any VisibilityQueryImplementations in the project's own lookup, which
+ * the global query does not consult. Walks of the project folder use this
+ * in place of VisibilityQuery.getDefault(), so hidden folders are pruned
+ * when they are reached rather than walked.
+ *
+ * @author Tim Boudreau
+ */
+public final class ProjectVisibility {
+
+    private final List<VisibilityQueryImplementation> impls;
+
+    public ProjectVisibility(Lookup projectLookup) {
+        impls = new ArrayList<>(projectLookup.lookupAll(VisibilityQueryImplementation.class));
+    }
+
+    public boolean isVisible(FileObject fo) {
+        if (!VisibilityQuery.getDefault().isVisible(fo)) {
+            return false;
+        }
+        for (VisibilityQueryImplementation impl : impls) {
+            if (!impl.isVisible(fo)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isVisible(File file) {
+        if (!VisibilityQuery.getDefault().isVisible(file)) {
+            return false;
+        }
+        for (VisibilityQueryImplementation impl : impls) {
+            if (impl instanceof VisibilityQueryImplementation2) {
+                if (!((VisibilityQueryImplementation2) impl).isVisible(file)) {
+                    return false;
+                }
+            } else {
+                FileObject fo = FileUtil.toFileObject(file);
+                if (fo != null && !impl.isVisible(fo)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether this hides exactly the files another does. The global query
+     * is the same for every project, and .gitignore rules are read from
+     * the root of the checkout a project is in, so projects in the same
+     * checkout - such as one in a folder of another - agree.
+     */
+    public boolean hasSameRules(ProjectVisibility other) {
+        if (other == this) {
+            return true;
+        }
+        if (other.impls.size() != impls.size()) {
+            return false;
+        }
+        for (int i = 0; i < impls.size(); i++) {
+            VisibilityQueryImplementation a = impls.get(i);
+            VisibilityQueryImplementation b = other.impls.get(i);
+            if (a == b) {
+                continue;
+            }
+            if (a instanceof GitIgnoreVisibility && b instanceof GitIgnoreVisibility) {
+                File root = ((GitIgnoreVisibility) a).rulesRoot();
+                if (root != null && root.equals(((GitIgnoreVisibility) b).rulesRoot())) {
+                    continue;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Listen for changes in the project's own visibility rules.
+     */
+    public void addChangeListener(ChangeListener l) {
+        for (VisibilityQueryImplementation impl : impls) {
+            impl.addChangeListener(l);
+        }
+    }
+
+    public void removeChangeListener(ChangeListener l) {
+        for (VisibilityQueryImplementation impl : impls) {
+            impl.removeChangeListener(l);
+        }
+    }
+}
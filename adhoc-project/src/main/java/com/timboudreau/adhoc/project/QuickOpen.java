@@ -0,0 +1,336 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project;
+
+import com.timboudreau.adhoc.project.QuickOpenIndex.Match;
+import com.timboudreau.adhoc.project.bytype.IndexedFiles;
+import java.awt.EventQueue;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import org.openide.awt.StatusDisplayer;
+import org.openide.cookies.OpenCookie;
+import org.openide.filesystems.FileObject;
+import org.openide.loaders.DataObject;
+import org.openide.util.Exceptions;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Feeds a quick open panel an index of the files of some projects, taken
+ * from the scans behind their Files by Type nodes, and updates it in the
+ * background as files come and go while the panel is open. Files added
+ * and removed are applied to the index as they are reported, and it is
+ * only built again from every path once they add up to a good part of it,
+ * or a project that was still being scanned elsewhere is done. Projects
+ * nobody has scanned yet are scanned one at a time, the panel showing the
+ * files of the rest meanwhile and each one's being added as it finishes.
+ * The last index built is kept while memory allows, so opening the panel
+ * again for the same projects shows it at once, while a fresh one is built.
+ *
+ * @author Tim Boudreau
+ */
+final class QuickOpen implements ChangeListener, Runnable {
+
+    private static final RequestProcessor rp = new RequestProcessor(QuickOpen.class.getSimpleName(), 1);
+    private static final int UPDATE_DELAY = 500;
+    // Rebuild once this many files, or an eighth of them, have changed
+    private static final int MIN_REBUILD_CHANGES = 10000;
+    private static Reference<Cached> last = new SoftReference<>(null);
+    private final Map<FileObject, AdhocProject> projects = new LinkedHashMap<>();
+    private final Map<FileObject, IndexedFiles> files = new HashMap<>();
+    private final RequestProcessor.Task task = rp.create(this);
+    private final QuickOpenPanel panel;
+    private final Updates updates = new Updates();
+    private volatile boolean closed;
+    // Only touched by the task
+    private QuickOpenIndex index;
+    // Files added and removed since the index was updated, by project
+    // folder; guarded by this
+    private final Map<FileObject, Delta> pending = new HashMap<>();
+    // Whether the next run reads every path; guarded by this
+    private boolean rebuild = true;
+    // Projects not yet scanned when the paths were read; guarded by this
+    private final Set<FileObject> unscanned = new HashSet<>();
+
+    QuickOpen(List<AdhocProject> projects, QuickOpenPanel panel) {
+        this.panel = panel;
+        for (AdhocProject prj : projects) {
+            FileObject dir = prj.getProjectDirectory();
+            if (!this.projects.containsKey(dir)) {
+                this.projects.put(dir, prj);
+                IndexedFiles f = IndexedFiles.acquire(dir, prj.getScanBudget(),
+                        prj.getExclusions(), prj.getVisibility());
+                f.addChangeListener(this);
+                f.addFilesListener(updates);
+                files.put(dir, f);
+            }
+        }
+    }
+
+    void start() {
+        QuickOpenIndex index = cached(new ArrayList<>(projects.keySet()));
+        if (index != null) {
+            panel.setIndex(index, 0);
+        }
+        task.schedule(0);
+    }
+
+    void close() {
+        closed = true;
+        task.cancel();
+        for (IndexedFiles f : files.values()) {
+            f.removeChangeListener(this);
+            f.removeFilesListener(updates);
+            f.release();
+        }
+    }
+
+    @Override
+    public void stateChanged(ChangeEvent ce) {
+        // The files of a project that was already scanned are reported to
+        // Updates, so only a scan finishing matters
+        synchronized (this) {
+            boolean scanned = false;
+            for (FileObject dir : unscanned) {
+                scanned |= files.get(dir).isBuilt();
+            }
+            if (!scanned) {
+                return;
+            }
+            rebuild = true;
+        }
+        if (!closed) {
+            task.schedule(UPDATE_DELAY);
+        }
+    }
+
+    @Override
+    public void run() {
+        boolean full;
+        Map<FileObject, Delta> deltas;
+        synchronized (this) {
+            full = rebuild || this.index == null;
+            rebuild = false;
+            deltas = new HashMap<>(pending);
+            pending.clear();
+        }
+        QuickOpenIndex index = this.index;
+        if (!full) {
+            if (deltas.isEmpty()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (Map.Entry<FileObject, Delta> e : deltas.entrySet()) {
+                Delta d = e.getValue();
+                index = index.update(e.getKey(), d.added, d.removed,
+                        scores(projects.get(e.getKey()), now));
+            }
+            full = tooManyChanges(index);
+        }
+        if (full) {
+            index = readAll();
+        }
+        if (closed) {
+            return;
+        }
+        List<FileObject> toScan;
+        synchronized (this) {
+            toScan = new ArrayList<>(unscanned);
+        }
+        publish(index, toScan.size());
+        // Scan any project nobody has looked at yet, adding its files as
+        // soon as it is done rather than once all are
+        for (int i = 0; i < toScan.size(); i++) {
+            if (closed) {
+                return;
+            }
+            FileObject dir = toScan.get(i);
+            IndexedFiles f = files.get(dir);
+            synchronized (this) {
+                // so its scan finishing is not taken as a reason to rebuild
+                unscanned.remove(dir);
+            }
+            f.build();
+            synchronized (this) {
+                if (!f.isBuilt()) {
+                    // being scanned on another thread; rebuilt when done
+                    unscanned.add(dir);
+                    continue;
+                }
+            }
+            index = this.index.update(dir, f.paths(), Collections.<String>emptyList(),
+                    scores(projects.get(dir), System.currentTimeMillis()));
+            if (tooManyChanges(index)) {
+                index = readAll();
+            }
+            publish(index, toScan.size() - i - 1);
+        }
+    }
+
+    private static boolean tooManyChanges(QuickOpenIndex index) {
+        return index.changes() > Math.max(MIN_REBUILD_CHANGES, index.size() / 8);
+    }
+
+    /**
+     * Build an index from the files of every project which has been
+     * scanned; those which have not are listed in unscanned.
+     */
+    private QuickOpenIndex readAll() {
+        // Changes reported from here on are applied to the new index;
+        // ones already in the paths read do nothing
+        long now = System.currentTimeMillis();
+        QuickOpenIndex.Builder builder = new QuickOpenIndex.Builder();
+        for (Map.Entry<FileObject, AdhocProject> e : projects.entrySet()) {
+            AdhocProject prj = e.getValue();
+            IndexedFiles f = files.get(e.getKey());
+            boolean built;
+            // Before reading the paths, so a scan finishing after is not
+            // missed
+            synchronized (this) {
+                built = f.isBuilt();
+                if (built) {
+                    unscanned.remove(e.getKey());
+                } else {
+                    unscanned.add(e.getKey());
+                }
+            }
+            // added with no files, so they can be added when scanned
+            builder.add(prj.getDisplayName(), e.getKey(),
+                    built ? f.paths() : Collections.<String>emptyList(), scores(prj, now));
+        }
+        return builder.build();
+    }
+
+    private static Map<String, Double> scores(AdhocProject prj, long now) {
+        Map<String, Double> scores = new HashMap<>();
+        for (Favorite f : prj.favorites()) {
+            scores.put(f.path(), f.score(now));
+        }
+        return scores;
+    }
+
+    private void publish(final QuickOpenIndex index, final int scanning) {
+        this.index = index;
+        synchronized (QuickOpen.class) {
+            last = new SoftReference<>(new Cached(new ArrayList<>(projects.keySet()), index));
+        }
+        EventQueue.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (!closed) {
+                    panel.setIndex(index, scanning);
+                }
+            }
+        });
+    }
+
+    private static synchronized QuickOpenIndex cached(List<FileObject> roots) {
+        Cached c = last.get();
+        return c != null && c.roots.equals(roots) ? c.index : null;
+    }
+
+    /**
+     * Open a file chosen in the panel, counting it as a use for the
+     * project's favorites.
+     */
+    void open(Match match) {
+        FileObject fo = match.root.getFileObject(match.path);
+        if (fo == null || !fo.isValid()) {
+            StatusDisplayer.getDefault().setStatusText(match.path + " no longer exists");
+            return;
+        }
+        try {
+            OpenCookie open = DataObject.find(fo).getLookup().lookup(OpenCookie.class);
+            if (open != null) {
+                open.open();
+                AdhocProject prj = projects.get(match.root);
+                if (prj != null) {
+                    prj.fileOpened(match.path);
+                }
+            }
+        } catch (IOException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+    }
+
+    /**
+     * Collects the files added and removed in each project until the task
+     * applies them.
+     */
+    private final class Updates implements IndexedFiles.FilesListener {
+
+        @Override
+        public void filesChanged(FileObject root, List<String> added, List<String> removed) {
+            synchronized (QuickOpen.this) {
+                Delta d = pending.get(root);
+                if (d == null) {
+                    d = new Delta();
+                    pending.put(root, d);
+                }
+                d.add(added, removed);
+            }
+            if (!closed) {
+                task.schedule(UPDATE_DELAY);
+            }
+        }
+    }
+
+    /**
+     * The net change to the files of a project: a file added and then
+     * removed is only removed.
+     */
+    private static final class Delta {
+
+        final Set<String> added = new LinkedHashSet<>();
+        final Set<String> removed = new LinkedHashSet<>();
+
+        void add(List<String> added, List<String> removed) {
+            for (String path : removed) {
+                this.added.remove(path);
+                this.removed.add(path);
+            }
+            for (String path : added) {
+                this.removed.remove(path);
+                this.added.add(path);
+            }
+        }
+    }
+
+    private static final class Cached {
+
+        final List<FileObject> roots;
+        final QuickOpenIndex index;
+
+        Cached(List<FileObject> roots, QuickOpenIndex index) {
+            this.roots = roots;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project;
+
+import com.timboudreau.adhoc.project.QuickOpenIndex.Match;
+import java.awt.Dialog;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import org.netbeans.api.project.Project;
+import org.netbeans.api.project.ui.OpenProjects;
+import org.openide.DialogDescriptor;
+import org.openide.DialogDisplayer;
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.awt.ActionRegistration;
+import org.openide.awt.StatusDisplayer;
+import org.openide.util.NbBundle;
+
+/**
+ * Finds a file by name in any open ad hoc project, without browsing their
+ * trees.
+ *
+ * @author Tim Boudreau
+ */
+@ActionID(id = "com.timboudreau.adhoc.project.QuickOpenAction", category = "Project")
+@ActionRegistration(displayName = "#ACT_QuickOpen")
+@ActionReference(position = 1050, path = "Menu/GoTo")
+@NbBundle.Messages(value = {"ACT_QuickOpen=Go to File in Ad Hoc Projects..."})
+public final class QuickOpenAction implements ActionListener {
+
+    @Override
+    public void actionPerformed(ActionEvent ae) {
+        List<AdhocProject> projects = new ArrayList<>();
+        for (Project p : OpenProjects.getDefault().getOpenProjects()) {
+            AdhocProject prj = p.getLookup().lookup(AdhocProject.class);
+            if (prj != null) {
+                projects.add(prj);
+            }
+        }
+        if (projects.isEmpty()) {
+            StatusDisplayer.getDefault().setStatusText("No ad hoc projects are open");
+            return;
+        }
+        final QuickOpenPanel panel = new QuickOpenPanel();
+        QuickOpen quickOpen = new QuickOpen(projects, panel);
+        final DialogDescriptor desc = new DialogDescriptor(panel, "Go to File");
+        final Dialog dlg = DialogDisplayer.getDefault().createDialog(desc);
+        panel.setOnChoose(new Runnable() {
+            @Override
+            public void run() {
+                desc.setValue(DialogDescriptor.OK_OPTION);
+                dlg.setVisible(false);
+            }
+        });
+        quickOpen.start();
+        try {
+            dlg.setVisible(true);
+        } finally {
+            quickOpen.close();
+            dlg.dispose();
+        }
+        Match match = panel.getSelected();
+        if (DialogDescriptor.OK_OPTION.equals(desc.getValue()) && match != null) {
+            quickOpen.open(match);
+        }
+    }
+}
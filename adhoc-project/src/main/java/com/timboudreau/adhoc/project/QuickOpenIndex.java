@@ -0,0 +1,711 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.openide.filesystems.FileObject;
+
+/**
+ * File names across several projects, searchable by prefix, by camel-case
+ * initials (FTI finds FileTypeIndex.java) and by the letters of the name
+ * in order. Each kind of match ranks above the next; within one, files
+ * with a higher favorites score come first, then shorter names.
+ * <p/>
+ * An index is an immutable snapshot laid out so that a query looks at as
+ * few files as it can. Files are numbered in order of
+ * name length, then name, and their lower cased names are packed into one
+ * array in that order. Favorites are few, and are matched one by one
+ * first; the other files rank only by kind of match and length, so each
+ * kind is looked for from the shortest names up, stopping once longer
+ * names cannot make the results. Prefix and initials matches are found by
+ * binary search within each length, and the scan for other matches skips
+ * names lacking any character of the query by comparing bit masks.
+ * <p/>
+ * Building an index sorts every file, so files added and removed later
+ * are applied with update() instead: removed files are marked in a bit
+ * set and skipped, and added ones go in a small index of their own whose
+ * matches are merged with the big one's.
+ *
+ * @author Tim Boudreau
+ */
+final class QuickOpenIndex {
+
+    private static final int EXACT = 0;
+    private static final int PREFIX = 1;
+    private static final int INITIALS = 2;
+    private static final int SUBSTRING = 3;
+    private static final int SUBSEQUENCE = 4;
+    // Larger than any favorites boost plus length penalty, so the kind of
+    // match always decides first
+    private static final int TIER = 1024;
+    private static final float MAX_BOOST = 512;
+    private static final int MAX_LENGTH_PENALTY = 255;
+    private final Root[] roots;
+    private final int[] rootOf;
+    private final String[] paths;
+    private final float[] boosts;
+    // lower cased names, entry e from nameStart[e] to nameStart[e + 1]
+    private final char[] chars;
+    private final int[] nameStart;
+    private final String[] initials;
+    private final long[] masks;
+    // the first entry with each name length
+    private final int[] lengthStart;
+    // entries sorted by initials within each length
+    private final int[] byInitials;
+    // favorites, best first
+    private final int[] byBoost;
+    // entries removed since the arrays were built, or null
+    private final BitSet removed;
+    // files added since, as their favorites scores (or null) by path, by
+    // project folder, and an index of them, or null
+    private final Map<FileObject, Map<String, Double>> extra;
+    private final QuickOpenIndex added;
+
+    private QuickOpenIndex(Root[] roots, int[] rootOf, String[] paths, float[] boosts) {
+        int count = paths.length;
+        final String[] names = new String[count];
+        int maxLength = 0;
+        for (int i = 0; i < count; i++) {
+            names[i] = paths[i].substring(paths[i].lastIndexOf('/') + 1);
+            maxLength = Math.max(maxLength, names[i].length());
+        }
+        final String[] lower = new String[count];
+        for (int i = 0; i < count; i++) {
+            lower[i] = names[i].toLowerCase(Locale.ROOT);
+        }
+        int[] order = sort(count, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int result = Integer.compare(lower[a].length(), lower[b].length());
+                return result != 0 ? result : lower[a].compareTo(lower[b]);
+            }
+        });
+        this.roots = roots;
+        this.rootOf = new int[count];
+        this.paths = new String[count];
+        this.boosts = new float[count];
+        initials = new String[count];
+        masks = new long[count];
+        nameStart = new int[count + 1];
+        lengthStart = new int[maxLength + 2];
+        int size = 0;
+        for (String name : lower) {
+            size += name.length();
+        }
+        chars = new char[size];
+        int favorites = 0;
+        int pos = 0;
+        int length = 0;
+        for (int e = 0; e < count; e++) {
+            int i = order[e];
+            this.rootOf[e] = rootOf[i];
+            this.paths[e] = paths[i];
+            this.boosts[e] = boosts[i];
+            initials[e] = initials(names[i]);
+            masks[e] = mask(lower[i]);
+            nameStart[e] = pos;
+            lower[i].getChars(0, lower[i].length(), chars, pos);
+            pos += lower[i].length();
+            while (length <= lower[i].length()) {
+                lengthStart[length++] = e;
+            }
+            if (boosts[i] > 0) {
+                favorites++;
+            }
+        }
+        nameStart[count] = pos;
+        while (length < lengthStart.length) {
+            lengthStart[length++] = count;
+        }
+        byInitials = sort(count, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int result = Integer.compare(length(a), length(b));
+                return result != 0 ? result : initials[a].compareTo(initials[b]);
+            }
+        });
+        final int[] favs = new int[favorites];
+        for (int e = 0, j = 0; e < count; e++) {
+            if (this.boosts[e] > 0) {
+                favs[j++] = e;
+            }
+        }
+        int[] favOrder = sort(favorites, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Float.compare(QuickOpenIndex.this.boosts[favs[b]], QuickOpenIndex.this.boosts[favs[a]]);
+            }
+        });
+        byBoost = new int[favorites];
+        for (int i = 0; i < favorites; i++) {
+            byBoost[i] = favs[favOrder[i]];
+        }
+        removed = null;
+        extra = Collections.emptyMap();
+        added = null;
+    }
+
+    private QuickOpenIndex(QuickOpenIndex base, BitSet removed, Map<FileObject, Map<String, Double>> extra) {
+        roots = base.roots;
+        rootOf = base.rootOf;
+        paths = base.paths;
+        boosts = base.boosts;
+        chars = base.chars;
+        nameStart = base.nameStart;
+        initials = base.initials;
+        masks = base.masks;
+        lengthStart = base.lengthStart;
+        byInitials = base.byInitials;
+        byBoost = base.byBoost;
+        this.removed = removed.isEmpty() ? null : removed;
+        this.extra = extra;
+        if (extra.isEmpty()) {
+            added = null;
+        } else {
+            Builder builder = new Builder();
+            for (Root root : roots) {
+                Map<String, Double> files = extra.get(root.dir);
+                if (files != null) {
+                    builder.add(root.name, root.dir, files.keySet(), files);
+                }
+            }
+            added = builder.build();
+        }
+    }
+
+    int size() {
+        return paths.length - removedCount() + (added == null ? 0 : added.size());
+    }
+
+    private int removedCount() {
+        return removed == null ? 0 : removed.cardinality();
+    }
+
+    /**
+     * How many files have been added or removed with update() since the
+     * index was built; once it is a good part of the size, it is time to
+     * build a new one.
+     */
+    int changes() {
+        return removedCount() + (added == null ? 0 : added.size());
+    }
+
+    /**
+     * Get an index with files of one project added and removed, without
+     * sorting everything again. Adding a file which is there already, or
+     * removing one which is not, does nothing.
+     *
+     * @param dir The project folder
+     * @param add Paths relative to it of files added
+     * @param remove Paths of files removed
+     * @param scores Favorites scores by relative path
+     */
+    QuickOpenIndex update(FileObject dir, Collection<String> add, Collection<String> remove,
+            Map<String, Double> scores) {
+        int root = rootIndex(dir);
+        if (root < 0) {
+            return this;
+        }
+        BitSet rem = removed == null ? new BitSet(paths.length) : (BitSet) removed.clone();
+        Map<String, Double> files = extra.containsKey(dir)
+                ? new HashMap<>(extra.get(dir)) : new HashMap<String, Double>();
+        for (String path : remove) {
+            int e = entryOf(root, path);
+            if (e >= 0) {
+                rem.set(e);
+            }
+            files.remove(path);
+        }
+        for (String path : add) {
+            int e = entryOf(root, path);
+            if (e >= 0) {
+                rem.clear(e);
+            } else {
+                files.put(path, scores.get(path));
+            }
+        }
+        Map<FileObject, Map<String, Double>> ext = new HashMap<>(extra);
+        if (files.isEmpty()) {
+            ext.remove(dir);
+        } else {
+            ext.put(dir, files);
+        }
+        return new QuickOpenIndex(this, rem, ext);
+    }
+
+    private int rootIndex(FileObject dir) {
+        for (int i = 0; i < roots.length; i++) {
+            if (dir == null ? roots[i].dir == null : dir.equals(roots[i].dir)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The entry for a file in a project, or -1.
+     */
+    private int entryOf(int root, String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+        int len = name.length();
+        if (len >= lengthStart.length - 1) {
+            return -1;
+        }
+        int hi = lengthStart[len + 1];
+        for (int e = lowerBound(name, lengthStart[len], hi); e < hi && startsWith(e, name); e++) {
+            if (rootOf[e] == root && paths[e].equals(path)) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the files best matching a query.
+     *
+     * @param query Some or all of a file name; if empty, the favorites are
+     * returned
+     * @param max The most matches to return
+     * @return Matches, best first
+     */
+    List<Match> find(String query, int max) {
+        List<Match> result = search(query, max);
+        if (added != null) {
+            result.addAll(added.find(query, max));
+            Collections.sort(result);
+            if (result.size() > max) {
+                result = new ArrayList<>(result.subList(0, max));
+            }
+        }
+        return result;
+    }
+
+    private List<Match> search(String query, int max) {
+        String q = query.trim().toLowerCase(Locale.ROOT);
+        if (q.isEmpty()) {
+            List<Match> result = new ArrayList<>();
+            for (int i = 0; i < byBoost.length && result.size() < max; i++) {
+                if (removed == null || !removed.get(byBoost[i])) {
+                    result.add(match(byBoost[i], boosts[byBoost[i]]));
+                }
+            }
+            return result;
+        }
+        Top top = new Top(max);
+        for (int e : byBoost) {
+            int tier = tier(q, e);
+            if (tier >= 0) {
+                top.offer(e, score(tier, e));
+            }
+        }
+        int first = Math.min(q.length(), lengthStart.length - 1);
+        // prefix, including exact matches
+        for (int len = first; len < lengthStart.length - 1; len++) {
+            if (top.isFull() && base(EXACT, len) <= top.min()) {
+                return top.matches();
+            }
+            int hi = lengthStart[len + 1];
+            for (int e = lowerBound(q, lengthStart[len], hi); e < hi && startsWith(e, q); e++) {
+                if (boosts[e] == 0) {
+                    top.offer(e, base(len == q.length() || chars[nameStart[e] + q.length()] == '.'
+                            ? EXACT : PREFIX, len));
+                }
+            }
+        }
+        // initials
+        for (int len = first; len < lengthStart.length - 1; len++) {
+            if (top.isFull() && base(INITIALS, len) <= top.min()) {
+                return top.matches();
+            }
+            int hi = lengthStart[len + 1];
+            for (int i = lowerBoundInitials(q, lengthStart[len], hi); i < hi && initials[byInitials[i]].startsWith(q); i++) {
+                int e = byInitials[i];
+                if (boosts[e] == 0 && !startsWith(e, q)) {
+                    top.offer(e, base(INITIALS, len));
+                }
+            }
+        }
+        // anything else, shortest first
+        long mask = mask(q);
+        for (int len = first; len < lengthStart.length - 1; len++) {
+            double substring = base(SUBSTRING, len);
+            double subsequence = base(SUBSEQUENCE, len);
+            if (top.isFull() && substring <= top.min()) {
+                break;
+            }
+            for (int e = lengthStart[len]; e < lengthStart[len + 1]; e++) {
+                if ((masks[e] & mask) != mask || boosts[e] != 0) {
+                    continue;
+                }
+                int tier;
+                if (top.isFull() && subsequence <= top.min()) {
+                    // only a substring match could make the results
+                    if (!contains(e, q)) {
+                        continue;
+                    }
+                    tier = SUBSTRING;
+                } else if (isSubsequence(e, q)) {
+                    tier = contains(e, q) ? SUBSTRING : SUBSEQUENCE;
+                } else {
+                    continue;
+                }
+                // Checked last, as the initials are not in the one array
+                if (!startsWith(e, q) && !initials[e].startsWith(q)) {
+                    top.offer(e, tier == SUBSTRING ? substring : subsequence);
+                }
+            }
+        }
+        return top.matches();
+    }
+
+    /**
+     * The kind of match a file is for a query, or -1.
+     */
+    private int tier(String q, int e) {
+        if (startsWith(e, q)) {
+            return length(e) == q.length() || chars[nameStart[e] + q.length()] == '.'
+                    ? EXACT : PREFIX;
+        } else if (initials[e].startsWith(q)) {
+            return INITIALS;
+        } else if (contains(e, q)) {
+            return SUBSTRING;
+        } else if (isSubsequence(e, q)) {
+            return SUBSEQUENCE;
+        }
+        return -1;
+    }
+
+    private int length(int e) {
+        return nameStart[e + 1] - nameStart[e];
+    }
+
+    private double score(int tier, int e) {
+        return base(tier, length(e)) + boosts[e];
+    }
+
+    private static double base(int tier, int length) {
+        return (SUBSEQUENCE + 1 - tier) * TIER - Math.min(MAX_LENGTH_PENALTY, length);
+    }
+
+    private Match match(int e, double score) {
+        Root root = roots[rootOf[e]];
+        return new Match(root.name, root.dir, paths[e], score);
+    }
+
+    private boolean startsWith(int e, String q) {
+        int start = nameStart[e];
+        if (nameStart[e + 1] - start < q.length()) {
+            return false;
+        }
+        for (int i = 0; i < q.length(); i++) {
+            if (chars[start + i] != q.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean contains(int e, String q) {
+        int end = nameStart[e + 1] - q.length();
+        char c = q.charAt(0);
+        outer:
+        for (int i = nameStart[e]; i <= end; i++) {
+            if (chars[i] == c) {
+                for (int j = 1; j < q.length(); j++) {
+                    if (chars[i + j] != q.charAt(j)) {
+                        continue outer;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isSubsequence(int e, String q) {
+        int end = nameStart[e + 1];
+        int j = 0;
+        for (int i = nameStart[e]; i < end && j < q.length(); i++) {
+            if (chars[i] == q.charAt(j)) {
+                j++;
+            }
+        }
+        return j == q.length();
+    }
+
+    /**
+     * The first entry between lo and hi, which have names of one length in
+     * sorted order, whose name is not less than a key.
+     */
+    private int lowerBound(String key, int lo, int hi) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int compare(int e, String key) {
+        int start = nameStart[e];
+        int len = Math.min(nameStart[e + 1] - start, key.length());
+        for (int i = 0; i < len; i++) {
+            int diff = chars[start + i] - key.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (nameStart[e + 1] - start) - key.length();
+    }
+
+    private int lowerBoundInitials(String key, int lo, int hi) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (initials[byInitials[mid]].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * The first letter of a name and of each word in it, where words start
+     * after punctuation, at an upper case letter following a lower case
+     * one or starting a word after an acronym (the P of HTMLParser), and
+     * at a digit following a letter - lower cased.
+     */
+    static String initials(String name) {
+        StringBuilder sb = new StringBuilder();
+        char prev = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (i == 0 || !Character.isLetterOrDigit(prev)
+                        || (Character.isUpperCase(c) && Character.isLowerCase(prev))
+                        || (Character.isUpperCase(c) && Character.isUpperCase(prev)
+                        && i + 1 < name.length() && Character.isLowerCase(name.charAt(i + 1)))
+                        || (Character.isDigit(c) && !Character.isDigit(prev))) {
+                    sb.append(Character.toLowerCase(c));
+                }
+            }
+            prev = c;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A bit for each kind of character in a string, so a name which lacks
+     * some character of a query can be skipped with one comparison.
+     */
+    static long mask(String s) {
+        long result = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            int bit;
+            if (c >= 'a' && c <= 'z') {
+                bit = c - 'a';
+            } else if (c >= '0' && c <= '9') {
+                bit = 26 + c - '0';
+            } else {
+                bit = 36 + c % 28;
+            }
+            result |= 1L << bit;
+        }
+        return result;
+    }
+
+    private static int[] sort(int count, Comparator<Integer> comparator) {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, comparator);
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    /**
+     * The best matches found so far, as a bounded min-heap by score.
+     */
+    private final class Top {
+
+        private final int[] heap;
+        private final double[] scores;
+        private int size;
+
+        Top(int max) {
+            heap = new int[max];
+            scores = new double[max];
+        }
+
+        boolean isFull() {
+            return size == heap.length;
+        }
+
+        double min() {
+            return scores[0];
+        }
+
+        void offer(int e, double score) {
+            if (removed != null && removed.get(e)) {
+                return;
+            }
+            if (size < heap.length) {
+                int i = size++;
+                while (i > 0 && scores[(i - 1) / 2] > score) {
+                    heap[i] = heap[(i - 1) / 2];
+                    scores[i] = scores[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                heap[i] = e;
+                scores[i] = score;
+            } else if (size > 0 && score > scores[0]) {
+                int i = 0;
+                for (;;) {
+                    int child = i * 2 + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && scores[child + 1] < scores[child]) {
+                        child++;
+                    }
+                    if (scores[child] >= score) {
+                        break;
+                    }
+                    heap[i] = heap[child];
+                    scores[i] = scores[child];
+                    i = child;
+                }
+                heap[i] = e;
+                scores[i] = score;
+            }
+        }
+
+        List<Match> matches() {
+            List<Match> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                result.add(match(heap[i], scores[i]));
+            }
+            Collections.sort(result);
+            return result;
+        }
+    }
+
+    static final class Match implements Comparable<Match> {
+
+        final String projectName;
+        final FileObject root;
+        final String path;
+        final double score;
+
+        Match(String projectName, FileObject root, String path, double score) {
+            this.projectName = projectName;
+            this.root = root;
+            this.path = path;
+            this.score = score;
+        }
+
+        String name() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public int compareTo(Match o) {
+            int result = Double.compare(o.score, score);
+            return result != 0 ? result : path.compareTo(o.path);
+        }
+
+        @Override
+        public String toString() {
+            return projectName + ':' + path;
+        }
+    }
+
+    private static final class Root {
+
+        final String name;
+        final FileObject dir;
+
+        Root(String name, FileObject dir) {
+            this.name = name;
+            this.dir = dir;
+        }
+    }
+
+    static final class Builder {
+
+        private final List<Root> roots = new ArrayList<>();
+        private final List<String> paths = new ArrayList<>();
+        private int[] rootOf = new int[1024];
+        private float[] boosts = new float[1024];
+
+        /**
+         * Add the files of a project.
+         *
+         * @param paths Paths relative to the project folder
+         * @param scores Favorites scores by relative path
+         */
+        Builder add(String projectName, FileObject dir, Collection<String> paths, Map<String, Double> scores) {
+            int root = roots.size();
+            roots.add(new Root(projectName, dir));
+            int start = this.paths.size();
+            if (start + paths.size() > rootOf.length) {
+                int size = Math.max(rootOf.length * 2, start + paths.size());
+                rootOf = Arrays.copyOf(rootOf, size);
+                boosts = Arrays.copyOf(boosts, size);
+            }
+            Arrays.fill(rootOf, start, start + paths.size(), root);
+            for (String path : paths) {
+                Double score = scores.get(path);
+                boosts[this.paths.size()] = score == null ? 0F : boost(score);
+                this.paths.add(path);
+            }
+            return this;
+        }
+
+        private static float boost(double score) {
+            return (float) Math.min(MAX_BOOST, 64 * Math.log(1 + score) / Math.log(2));
+        }
+
+        QuickOpenIndex build() {
+            return new QuickOpenIndex(roots.toArray(new Root[roots.size()]),
+                    Arrays.copyOf(rootOf, paths.size()),
+                    paths.toArray(new String[paths.size()]),
+                    Arrays.copyOf(boosts, paths.size()));
+        }
+    }
+}
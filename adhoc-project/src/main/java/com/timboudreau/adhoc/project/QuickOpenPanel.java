@@ -0,0 +1,177 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project;
+
+import com.timboudreau.adhoc.project.QuickOpenIndex.Match;
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.text.NumberFormat;
+import java.util.List;
+import javax.swing.AbstractAction;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.ListSelectionModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+/**
+ * A field to type some of a file name into, and the best matches, updated
+ * as you type.
+ *
+ * @author Tim Boudreau
+ */
+final class QuickOpenPanel extends JPanel implements DocumentListener {
+
+    private static final int MAX_MATCHES = 50;
+    private final JTextField field = new JTextField();
+    private final JList<Match> list = new JList<>();
+    private final JLabel status = new JLabel("Scanning...");
+    private QuickOpenIndex index;
+    private Runnable onChoose;
+
+    @SuppressWarnings("LeakingThisInConstructor")
+    QuickOpenPanel() {
+        super(new BorderLayout(0, 5));
+        setBorder(BorderFactory.createEmptyBorder(12, 12, 12, 12));
+        add(field, BorderLayout.NORTH);
+        JScrollPane pane = new JScrollPane(list);
+        pane.setPreferredSize(new Dimension(600, 360));
+        add(pane, BorderLayout.CENTER);
+        add(status, BorderLayout.SOUTH);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setCellRenderer(new Renderer());
+        list.setFocusable(false);
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && onChoose != null && getSelected() != null) {
+                    onChoose.run();
+                }
+            }
+        });
+        field.getDocument().addDocumentListener(this);
+        // Move through the matches without leaving the field
+        field.getInputMap(JComponent.WHEN_FOCUSED).put(KeyStroke.getKeyStroke(KeyEvent.VK_UP, 0), "up");
+        field.getInputMap(JComponent.WHEN_FOCUSED).put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0), "down");
+        field.getActionMap().put("up", new Move(-1));
+        field.getActionMap().put("down", new Move(1));
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        field.requestFocusInWindow();
+    }
+
+    void setOnChoose(Runnable onChoose) {
+        this.onChoose = onChoose;
+    }
+
+    /**
+     * Search an index.
+     *
+     * @param scanning How many projects are still being scanned, whose
+     * files are not in it yet
+     */
+    void setIndex(QuickOpenIndex index, int scanning) {
+        this.index = index;
+        status.setText(NumberFormat.getIntegerInstance().format(index.size()) + " files"
+                + (scanning == 0 ? "" : scanning == 1 ? ", scanning 1 project..."
+                        : ", scanning " + scanning + " projects..."));
+        update();
+    }
+
+    Match getSelected() {
+        return list.getSelectedValue();
+    }
+
+    private void update() {
+        if (index == null) {
+            return;
+        }
+        List<Match> matches = index.find(field.getText(), MAX_MATCHES);
+        list.setListData(matches.toArray(new Match[matches.size()]));
+        if (!matches.isEmpty()) {
+            list.setSelectedIndex(0);
+        }
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent de) {
+        update();
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent de) {
+        update();
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent de) {
+        update();
+    }
+
+    private final class Move extends AbstractAction {
+
+        private final int by;
+
+        Move(int by) {
+            this.by = by;
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent ae) {
+            int size = list.getModel().getSize();
+            if (size > 0) {
+                int ix = Math.max(0, Math.min(size - 1, list.getSelectedIndex() + by));
+                list.setSelectedIndex(ix);
+                list.ensureIndexIsVisible(ix);
+            }
+        }
+    }
+
+    private static final class Renderer extends DefaultListCellRenderer {
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            Match m = (Match) value;
+            int ix = m.path.lastIndexOf('/');
+            String folder = ix < 0 ? "" : "/" + m.path.substring(0, ix);
+            String text = "<html>" + escape(m.name()) + " <font color=\"!controlShadow\">("
+                    + escape(m.projectName + folder) + ")";
+            return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+        }
+
+        private static String escape(String s) {
+            return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+        }
+    }
+}
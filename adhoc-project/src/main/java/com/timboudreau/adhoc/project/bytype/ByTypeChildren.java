@@ -18,18 +18,36 @@
  CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
 package com.timboudreau.adhoc.project.bytype;
 
+import com.timboudreau.adhoc.project.Exclusions;
 import com.timboudreau.adhoc.project.FavoritesTrackingNodeFactory;
+import com.timboudreau.adhoc.project.ProjectVisibility;
 import com.timboudreau.adhoc.project.bytype.ByTypeChildren.MimeType;
-import java.util.ArrayList;
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.NumberFormat;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.netbeans.api.queries.VisibilityQuery;
+import javax.swing.AbstractAction;
+import javax.swing.Action;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
 import org.openide.loaders.DataObject;
 import org.openide.loaders.DataObjectNotFoundException;
 import org.openide.nodes.AbstractNode;
@@ -37,8 +55,11 @@ import org.openide.nodes.ChildFactory;
 import org.openide.nodes.Children;
 import org.openide.nodes.FilterNode;
 import org.openide.nodes.Node;
+import org.openide.util.ChangeSupport;
+import org.openide.util.Exceptions;
 import org.openide.util.Parameters;
 import org.openide.util.RequestProcessor;
+import org.openide.util.WeakListeners;
 import org.openide.util.lookup.Lookups;
 
 /**
@@ -46,19 +67,51 @@ import org.openide.util.lookup.Lookups;
  *
  * @author Tim Boudreau
  */
-public class ByTypeChildren extends Children.Keys<MimeType> {
+public class ByTypeChildren extends Children.Keys<MimeType> implements ChangeListener {
 
+    // whether anything is using the index
     private volatile boolean attached;
+    // whether the type nodes are showing
+    private volatile boolean expanded;
+    private int users;
     private static final RequestProcessor rp = new RequestProcessor(ByTypeChildren.class.getSimpleName(), 2);
     private final R r = new R();
     private final RequestProcessor.Task task = rp.create(r);
+    private final AtomicBoolean publishPending = new AtomicBoolean();
+    private final RequestProcessor.Task publishTask = rp.create(new Publisher());
+    private final VisibilityListener visibilityListener = new VisibilityListener();
+    private final RequestProcessor.Task reconcileTask = rp.create(visibilityListener);
+    private final StatsRelay statsRelay = new StatsRelay();
+    private final RequestProcessor.Task statsTask = rp.create(statsRelay);
+    private final AtomicBoolean statsPending = new AtomicBoolean();
+    private final ChangeSupport statsSupport = new ChangeSupport(this);
+    private final ChangeSupport indexSupport = new ChangeSupport(this);
     private FileObject root;
-    private final Set<MimeType> types = Collections.synchronizedSet(new HashSet<MimeType>());
-    public static final int MAX_DEPTH = 12;
+    private ScanBudget budget;
+    private Exclusions exclusions;
+    private final ProjectVisibility visibility;
+    private FileTypeIndex index;
+    // expanded type buckets, which follow the index when it is replaced
+    private final Set<FileFinder> finders = new HashSet<>();
+    private final RequestProcessor.Task refreshFindersTask = rp.create(new FinderRefresher());
+    /**
+     * How often partial results are published while the tree is scanned.
+     */
+    static final int BATCH_DELAY = 200;
+    /**
+     * How many files of a type are shown before a Show More node, so that
+     * expanding a type with tens of thousands of files does not create a
+     * DataObject and node for every one of them.
+     */
+    static final int PAGE_SIZE = 1000;
     private final FavoritesTrackingNodeFactory factory;
 
-    public ByTypeChildren(FileObject root, FavoritesTrackingNodeFactory factory) {
+    public ByTypeChildren(FileObject root, ScanBudget budget, Exclusions exclusions,
+            ProjectVisibility visibility, FavoritesTrackingNodeFactory factory) {
         this.root = root;
+        this.budget = budget;
+        this.exclusions = exclusions;
+        this.visibility = visibility;
         this.factory = factory;
     }
 
@@ -67,50 +120,396 @@ public class ByTypeChildren extends Children.Keys<MimeType> {
     }
 
     public synchronized void setRoot(FileObject root) {
-        this.root = root;
+        if (!root.equals(this.root)) {
+            this.root = root;
+            replaceIndex();
+        }
+    }
+
+    public void setScanBudget(ScanBudget budget) {
+        synchronized (this) {
+            if (budget.equals(this.budget)) {
+                return;
+            }
+            this.budget = budget;
+            replaceIndex();
+        }
+        partialChanged();
+    }
+
+    public void setExclusions(Exclusions exclusions) {
+        synchronized (this) {
+            if (exclusions.equals(this.exclusions)) {
+                return;
+            }
+            this.exclusions = exclusions;
+            replaceIndex();
+        }
+        partialChanged();
+    }
+
+    private void replaceIndex() {
+        assert Thread.holdsLock(this);
+        if (!attached) {
+            // acquired with the new settings when next used
+            index = null;
+            rebindFinders();
+            return;
+        }
+        index.removeChangeListener(this);
+        index.removeStatsListener(statsRelay);
+        IndexService.release(index);
+        index = IndexService.acquire(root, budget, exclusions, visibility);
+        index.addChangeListener(this);
+        index.addStatsListener(statsRelay);
+        rebindFinders();
+        // open buckets still show what the old index had
+        refreshFindersTask.schedule(0);
+        // may be shared and already built, in which case there is no event
+        publishTask.schedule(0);
+        if (!index.isBuilt()) {
+            task.schedule(120);
+        }
+    }
+
+    /**
+     * The index in use, or null if the settings changed while nothing was
+     * using it and it has not been acquired again yet.
+     */
+    synchronized FileTypeIndex index() {
+        return index;
+    }
+
+    /**
+     * Start passing changes in a type's files to a finder, from whichever
+     * index is in use now or later.
+     */
+    synchronized void bind(FileFinder finder) {
+        finders.add(finder);
+        rebind(finder);
+    }
+
+    synchronized void unbind(FileFinder finder) {
+        finders.remove(finder);
+        if (finder.bound != null) {
+            finder.bound.removeChangeListener(finder.mt, finder);
+            finder.bound = null;
+        }
+    }
+
+    private void rebindFinders() {
+        assert Thread.holdsLock(this);
+        for (FileFinder finder : finders) {
+            rebind(finder);
+        }
+    }
+
+    private void rebind(FileFinder finder) {
+        assert Thread.holdsLock(this);
+        if (finder.bound != index) {
+            if (finder.bound != null) {
+                finder.bound.removeChangeListener(finder.mt, finder);
+            }
+            if (index != null) {
+                index.addChangeListener(finder.mt, finder);
+            }
+            finder.bound = index;
+        }
+    }
+
+    /**
+     * Whether the last scan ran out of its budget, so not all files are
+     * shown.
+     */
+    public boolean isPartial() {
+        FileTypeIndex idx = index();
+        return idx != null && idx.isPartial();
+    }
+
+    private void partialChanged() {
+        Node n = getNode();
+        if (n instanceof ByTypeNode) {
+            ((ByTypeNode) n).partialChanged();
+        }
     }
 
     public void addNotify() {
-        attached = true;
-        task.schedule(120);
+        expanded = true;
+        attach();
+        FileTypeIndex idx = index();
+        if (idx.isBuilt()) {
+            setKeys(idx.types());
+        }
     }
 
     public void removeNotify() {
-        attached = false;
-        task.cancel();
+        expanded = false;
+        detach();
+    }
+
+    /**
+     * Start using the index, for these children or another view of the
+     * same files, scanning if it has not been built yet.
+     */
+    synchronized void attach() {
+        if (users++ == 0) {
+            attached = true;
+            FileTypeIndex old = index;
+            index = IndexService.acquire(root, budget, exclusions, visibility);
+            visibility.addChangeListener(visibilityListener);
+            index.addChangeListener(this);
+            index.addStatsListener(statsRelay);
+            rebindFinders();
+            if (old != null && old != index) {
+                refreshFindersTask.schedule(0);
+            }
+            if (!index.isBuilt()) {
+                task.schedule(120);
+            }
+        }
+    }
+
+    synchronized void detach() {
+        if (--users == 0) {
+            attached = false;
+            task.cancel();
+            visibility.removeChangeListener(visibilityListener);
+            index.removeChangeListener(this);
+            index.removeStatsListener(statsRelay);
+            IndexService.release(index);
+        }
+    }
+
+    /**
+     * Listen for changes in file counts and sizes, or in the largest and
+     * most recent files, at most every BATCH_DELAY ms; survives the index
+     * being replaced.
+     */
+    void addStatsListener(ChangeListener l) {
+        statsSupport.addChangeListener(l);
+    }
+
+    void removeStatsListener(ChangeListener l) {
+        statsSupport.removeChangeListener(l);
+    }
+
+    /**
+     * Listen for the index in use being built, or replaced after a settings
+     * change; also told when the types in a built index change.
+     */
+    void addIndexListener(ChangeListener l) {
+        indexSupport.addChangeListener(l);
+    }
+
+    void removeIndexListener(ChangeListener l) {
+        indexSupport.removeChangeListener(l);
+    }
+
+    @Override
+    public void stateChanged(ChangeEvent ce) {
+        FileTypeIndex idx = index();
+        if (idx == null) {
+            return;
+        }
+        if (idx.isBuilt()) {
+            // also fired when the index is first built
+            partialChanged();
+            if (expanded) {
+                setKeys(idx.types());
+            }
+            List<FileFinder> toFinish;
+            synchronized (this) {
+                toFinish = new ArrayList<>(finders);
+            }
+            for (FileFinder finder : toFinish) {
+                finder.indexBuilt();
+            }
+            indexSupport.fireChange();
+        } else if (expanded && publishPending.compareAndSet(false, true)) {
+            // Mid-scan - show types as they are found, but not more
+            // often than every BATCH_DELAY ms
+            publishTask.schedule(BATCH_DELAY);
+        }
+    }
+
+    /**
+     * Catches up with a changed .gitignore (or other project visibility
+     * rule) by reconciling the index against the disk, which relists the
+     * folders under the changed file.
+     */
+    private final class VisibilityListener implements ChangeListener, Runnable {
+
+        @Override
+        public void stateChanged(ChangeEvent ce) {
+            if (attached) {
+                reconcileTask.schedule(500);
+            }
+        }
+
+        @Override
+        public void run() {
+            FileTypeIndex idx = index();
+            File dir = idx == null ? null : FileUtil.toFile(idx.root());
+            if (attached && idx != null) {
+                idx.visibilityChanged();
+            }
+            // an index still being built is scanned with the new rules
+            if (attached && dir != null && idx.isBuilt()) {
+                idx.reconcile(dir.toPath());
+                if (idx.isPartial()) {
+                    partialChanged();
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes on changes in file counts and sizes to the type nodes, at most
+     * every BATCH_DELAY ms, since during a scan they change with every file.
+     */
+    private final class StatsRelay implements ChangeListener, Runnable {
+
+        @Override
+        public void stateChanged(ChangeEvent ce) {
+            if (statsPending.compareAndSet(false, true)) {
+                statsTask.schedule(BATCH_DELAY);
+            }
+        }
+
+        @Override
+        public void run() {
+            statsPending.set(false);
+            statsSupport.fireChange();
+        }
+    }
+
+    private final class Publisher implements Runnable {
+
+        @Override
+        public void run() {
+            publishPending.set(false);
+            FileTypeIndex idx = index();
+            if (expanded && idx != null) {
+                setKeys(idx.types());
+            }
+        }
+    }
+
+    /**
+     * Reloads open type buckets from a replacement index.
+     */
+    private final class FinderRefresher implements Runnable {
+
+        @Override
+        public void run() {
+            List<FileFinder> toRefresh;
+            synchronized (ByTypeChildren.this) {
+                toRefresh = new ArrayList<>(finders);
+            }
+            for (FileFinder finder : toRefresh) {
+                finder.indexReplaced();
+            }
+            indexSupport.fireChange();
+        }
     }
 
     @Override
     protected Node[] createNodes(MimeType t) {
         Children kids = Children.create(new FileFinder(t), true);
-        AbstractNode result = new AbstractNode(kids, Lookups.fixed(t));
-        result.setName(t.type);
-        result.setDisplayName(t.toString());
-        result.setShortDescription(t.type);
-        result.setIconBaseWithExtension("com/timboudreau/adhoc/project/type.png");
-        return new Node[]{ factory.createNode(result)};
+        return new Node[]{ factory.createNode(new TypeNode(t, kids))};
     }
 
-    private final class R implements Runnable, FileObjectVisitor<Set<MimeType>> {
+    private final class TypeNode extends AbstractNode implements ChangeListener {
 
-        public void run() {
-            visit(getRoot(), 0, MAX_DEPTH, this, types);
-            List<MimeType> all = new ArrayList<>(types);
-            Collections.sort(all);
-            setKeys(all);
+        private final MimeType type;
+
+        @SuppressWarnings("LeakingThisInConstructor")
+        TypeNode(MimeType type, Children kids) {
+            super(kids, Lookups.fixed(type));
+            this.type = type;
+            setName(type.type);
+            setIconBaseWithExtension("com/timboudreau/adhoc/project/type.png");
+            statsSupport.addChangeListener(WeakListeners.change(this, statsSupport));
+        }
+
+        @Override
+        public String getDisplayName() {
+            FileTypeIndex idx = index();
+            if (idx == null) {
+                return type.toString();
+            }
+            FileTypeIndex.TypeStats stats = idx.stats(type);
+            return type + " (" + files(stats.files) + ", " + formatSize(stats.bytes) + ')';
+        }
+
+        @Override
+        public String getShortDescription() {
+            FileTypeIndex idx = index();
+            if (idx == null) {
+                return type.type;
+            }
+            FileTypeIndex.TypeStats stats = idx.stats(type);
+            return type.type + ": " + files(stats.files) + ", "
+                    + NumberFormat.getIntegerInstance().format(stats.bytes) + " bytes";
+        }
+
+        @Override
+        public void stateChanged(ChangeEvent ce) {
+            fireDisplayNameChange(null, null);
+            fireShortDescriptionChange(null, null);
+        }
+    }
+
+    private static String files(int count) {
+        return NumberFormat.getIntegerInstance().format(count)
+                + (count == 1 ? " file" : " files");
+    }
+
+    static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + (bytes == 1 ? " byte" : " bytes");
+        }
+        String[] units = {"KB", "MB", "GB", "TB", "PB"};
+        double size = bytes / 1024D;
+        int unit = 0;
+        while (size >= 1024 && unit < units.length - 1) {
+            size /= 1024;
+            unit++;
         }
+        NumberFormat fmt = NumberFormat.getNumberInstance();
+        fmt.setMaximumFractionDigits(1);
+        return fmt.format(size) + ' ' + units[unit];
+    }
+
+    private final class R implements Runnable {
 
         @Override
-        public boolean visitFileObject(FileObject ob, Set<MimeType> r) {
-            r.add(new MimeType(ob.getMIMEType()));
-            return attached;
+        public void run() {
+            // Shared indexes are only built once, however many views ask
+            FileTypeIndex idx = index();
+            if (idx != null) {
+                idx.build();
+            }
         }
     }
 
-    private final class FileFinder extends ChildFactory.Detachable<FileObject> implements Comparator<FileObject>, FileObjectVisitor<List<FileObject>> {
+    private final class FileFinder extends ChildFactory.Detachable<String> implements Comparator<String>, ChangeListener, Runnable {
 
+        // Not a possible path
+        private static final String SHOW_MORE = "\u0000more";
         private final MimeType mt;
+        // the index this finder listens to, guarded by ByTypeChildren.this
+        private FileTypeIndex bound;
         private volatile boolean finderAttached;
+        private volatile int limit = PAGE_SIZE;
+        private volatile int hidden;
+        // reused for as long as there is more to show, so told when the
+        // number not shown changes
+        private volatile ShowMoreNode showMoreNode;
+        // whether the files shown were listed before the scan finished
+        private volatile boolean partial;
+        private final AtomicBoolean refreshPending = new AtomicBoolean();
+        private final RequestProcessor.Task refreshTask = rp.create(this);
 
         FileFinder(MimeType mt) {
             this.mt = mt;
@@ -119,71 +518,161 @@ public class ByTypeChildren extends Children.Keys<MimeType> {
         @Override
         protected void addNotify() {
             finderAttached = true;
+            bind(this);
         }
 
         @Override
         protected void removeNotify() {
             finderAttached = false;
+            unbind(this);
+        }
+
+        @Override
+        public void stateChanged(ChangeEvent ce) {
+            FileTypeIndex idx = index();
+            if (!attached || !finderAttached || idx == null) {
+                return;
+            }
+            if (idx.isBuilt()) {
+                refresh(false);
+            } else if (refreshPending.compareAndSet(false, true)) {
+                // Mid-scan - show files as they are found, but not more
+                // often than every BATCH_DELAY ms
+                refreshTask.schedule(BATCH_DELAY);
+            }
+        }
+
+        @Override
+        public void run() {
+            refreshPending.set(false);
+            if (finderAttached) {
+                refresh(false);
+            }
         }
 
         @Override
-        protected Node createNodeForKey(FileObject key) {
+        protected Node createNodeForKey(String key) {
+            if (SHOW_MORE.equals(key)) {
+                return showMoreNode = new ShowMoreNode(this);
+            }
+            FileTypeIndex idx = index();
+            if (idx == null) {
+                return null;
+            }
+            FileObject fo = idx.root().getFileObject(key);
             try {
-                DataObject ob = DataObject.find(key);
-                return new RelativePathNode(ob.getNodeDelegate());
+                if (fo != null) {
+                    DataObject ob = DataObject.find(fo);
+                    return new RelativePathNode(ob.getNodeDelegate());
+                }
             } catch (DataObjectNotFoundException ex) {
-                Logger.getLogger(FileFinder.class.getName()).log(Level.INFO,
-                        "File disappeared: {0}", key.getPath());
-                return null;
+                // fall through
             }
+            Logger.getLogger(FileFinder.class.getName()).log(Level.INFO,
+                    "File disappeared: {0}", key);
+            return null;
         }
-        
+
         @Override
-        protected boolean createKeys(List<FileObject> list) {
-            FileObject root = getRoot();
-            visit(root, 0, MAX_DEPTH, this, list);
-            Collections.sort(list, this);
+        protected boolean createKeys(List<String> list) {
+            // A lookup in the index - if the scan is still running, what has
+            // been found so far, with the index's change events refreshing
+            // it as more is found and once the scan is done
+            FileTypeIndex idx = index();
+            if (idx == null) {
+                // settings changed while collapsed; refreshed once reattached
+                return true;
+            }
+            // read before listing, and set while listing, so the index
+            // being built meanwhile is not missed
+            partial = true;
+            boolean built = idx.isBuilt();
+            List<String> files = idx.files(mt);
+            Collections.sort(files, this);
+            // Only the first page(s) get nodes
+            int max = limit;
+            list.addAll(files.size() > max ? files.subList(0, max) : files);
+            int oldHidden = hidden;
+            hidden = files.size() - list.size();
+            if (hidden > 0) {
+                list.add(SHOW_MORE);
+            }
+            ShowMoreNode more = showMoreNode;
+            if (more != null && hidden != oldHidden) {
+                more.hiddenChanged();
+            }
+            partial = !built;
             return true;
         }
 
-        @Override
-        public boolean visitFileObject(FileObject ob, List<FileObject> r) {
-            if (new MimeType(ob.getMIMEType()).equals(mt)) {
-                r.add(ob);
+        void indexReplaced() {
+            if (finderAttached) {
+                refresh(false);
             }
-            return attached && finderAttached;
+        }
+
+        void indexBuilt() {
+            // a restored or seeded index is built without any files being
+            // added to this type, so there may be no other event
+            if (partial && finderAttached) {
+                refresh(false);
+            }
+        }
+
+        void showMore() {
+            limit += PAGE_SIZE;
+            refresh(false);
         }
 
         @Override
-        public int compare(FileObject t, FileObject t1) {
-            return t.getName().compareToIgnoreCase(t1.getName());
+        public int compare(String t, String t1) {
+            return name(t).compareToIgnoreCase(name(t1));
+        }
+
+        private String name(String path) {
+            int ix = path.lastIndexOf('/');
+            String result = ix < 0 ? path : path.substring(ix + 1);
+            ix = result.lastIndexOf('.');
+            return ix <= 0 ? result : result.substring(0, ix);
         }
     }
 
-    private <R> boolean visit(FileObject root, int depth, int maxDepth, FileObjectVisitor<R> v, R arg) {
-        if (depth == maxDepth || !root.isValid()) {
-            return false;
+    private static final class ShowMoreNode extends AbstractNode {
+
+        private final FileFinder finder;
+
+        ShowMoreNode(FileFinder finder) {
+            super(Children.LEAF);
+            this.finder = finder;
+            setName("more");
+            setShortDescription("Show the next " + NumberFormat.getIntegerInstance().format(PAGE_SIZE) + " files");
         }
-        if (!VisibilityQuery.getDefault().isVisible(root)) {
-            return attached;
+
+        @Override
+        public String getDisplayName() {
+            return "Show More... (" + files(finder.hidden) + " not shown)";
         }
-        if (root.isData() && root.canRead() && root.isValid()) {
-            boolean result = v.visitFileObject(root, arg);
-            if (!result) {
-                return result;
-            }
+
+        void hiddenChanged() {
+            fireDisplayNameChange(null, getDisplayName());
         }
-        if (depth != maxDepth - 1 && root.isFolder() && root.canRead() && root.isValid()) {
-            for (FileObject fo : root.getChildren()) {
-                boolean result = visit(fo, depth + 1, maxDepth, v, arg);
-                if (!result) {
-                    return result;
+
+        @Override
+        public Action getPreferredAction() {
+            return new AbstractAction(getDisplayName()) {
+                @Override
+                public void actionPerformed(ActionEvent ae) {
+                    finder.showMore();
                 }
-            }
+            };
+        }
+
+        @Override
+        public Action[] getActions(boolean context) {
+            return new Action[]{getPreferredAction()};
         }
-        return attached;
     }
-    
+
     private class RelativePathNode extends FilterNode {
         RelativePathNode(Node orig) {
             super (orig);
@@ -199,81 +688,56 @@ public class ByTypeChildren extends Children.Keys<MimeType> {
         }
     }
 
-    interface FileObjectVisitor<R> {
-
-        boolean visitFileObject(FileObject ob, R r);
-    }
-
-    static class MimeType implements Comparable<MimeType> {
-
+    /**
+     * A category of files, such as Images or Javascript.  Instances are
+     * canonical - every mime type in a category maps to the same instance -
+     * so they can be compared by identity, and the category of a mime type
+     * is only worked out once.  Categories are defined in
+     * MimeCategories.properties.
+     */
+    static final class MimeType implements Comparable<MimeType> {
+
+        private static final ConcurrentMap<String, MimeType> byMimeType = new ConcurrentHashMap<>();
+        private static final ConcurrentMap<String, MimeType> byCategory = new ConcurrentHashMap<>();
+        /**
+         * The first mime type seen in this category.
+         */
         public final String type;
+        private final String category;
 
-        public MimeType(String type) {
-            Parameters.notNull("type", type);
+        private MimeType(String type, String category) {
             this.type = type;
+            this.category = category;
         }
 
-        public String type() {
-            return type;
-        }
-
-        public String toString() {
-            switch (type) {
-                case "text/x-java":
-                    return "Java";
-                case "application/javascript":
-                case "text/x-javascript":
-                case "text/javascript":
-                    return "Javascript";
-                case "text/html":
-                    return "HTML";
-                case "text/xml":
-                    return "XML";
-                case "text/plain":
-                    return "Text";
-                case "application/unknown":
-                case "content/unknown":
-                    return "Unknown";
-                case "application/pdf":
-                    return "PDFs";
-                case "image/gif":
-                case "image/png":
-                case "image/jpeg":
-                case "image/svg":
-                case "image/svg+xml":
-                case "image/tiff":
-                    return "Images";
-            }
-            if (type.startsWith("text/xml")) {
-                return "XML";
-            }
-            if ((type.startsWith("text/") && type.length() > 5) || (type.startsWith("application/") && type.length() > "application/".length())) {
-                String sub = type.substring(type.indexOf("/") + 1);
-                if (sub.startsWith("x-") && sub.length() > 2) {
-                    sub = sub.substring(2);
-                }
-                StringBuilder sb = new StringBuilder(sub);
-                sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
-                if ("Sh".equals(sb.toString())) {
-                    return "Shell Scripts";
+        static MimeType of(String type) {
+            Parameters.notNull("type", type);
+            MimeType result = byMimeType.get(type);
+            if (result == null) {
+                String category = Categories.categoryOf(type);
+                MimeType nue = new MimeType(type, category);
+                result = byCategory.putIfAbsent(category, nue);
+                if (result == null) {
+                    result = nue;
                 }
-                return sb.toString();
+                byMimeType.putIfAbsent(type, result);
             }
-            return type;
+            return result;
         }
 
-        public boolean equals(Object o) {
-            return o instanceof MimeType && o.toString().equals(toString());
+        public String type() {
+            return type;
         }
 
-        public int hashCode() {
-            return toString().hashCode();
+        @Override
+        public String toString() {
+            return category;
         }
 
         @Override
         public int compareTo(MimeType t) {
-            String a = toString();
-            String b = t.toString();
+            String a = category;
+            String b = t.category;
             boolean aKnown = a.indexOf('/') > 0;
             boolean bKnown = b.indexOf('/') > 0;
             if (aKnown == bKnown) {
@@ -283,4 +747,56 @@ public class ByTypeChildren extends Children.Keys<MimeType> {
             }
         }
     }
+
+    private static final class Categories {
+
+        private static final Map<String, String> exact = new HashMap<>();
+        // longest first, so the most specific prefix wins whatever order
+        // the properties come back in
+        private static final Map<String, String> prefixes = new LinkedHashMap<>();
+
+        static {
+            Properties props = new Properties();
+            try (InputStream in = Categories.class.getResourceAsStream("MimeCategories.properties")) {
+                props.load(in);
+            } catch (IOException ex) {
+                Exceptions.printStackTrace(ex);
+            }
+            List<String> keys = new ArrayList<>(props.stringPropertyNames());
+            Collections.sort(keys, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    int result = Integer.compare(b.length(), a.length());
+                    return result != 0 ? result : a.compareTo(b);
+                }
+            });
+            for (String key : keys) {
+                if (key.endsWith("*")) {
+                    prefixes.put(key.substring(0, key.length() - 1), props.getProperty(key));
+                } else {
+                    exact.put(key, props.getProperty(key));
+                }
+            }
+        }
+
+        static String categoryOf(String type) {
+            String result = exact.get(type);
+            if (result != null) {
+                return result;
+            }
+            for (Map.Entry<String, String> e : prefixes.entrySet()) {
+                if (type.startsWith(e.getKey())) {
+                    return e.getValue();
+                }
+            }
+            if ((type.startsWith("text/") && type.length() > 5) || (type.startsWith("application/") && type.length() > "application/".length())) {
+                String sub = type.substring(type.indexOf("/") + 1);
+                if (sub.startsWith("x-") && sub.length() > 2) {
+                    sub = sub.substring(2);
+                }
+                return Character.toUpperCase(sub.charAt(0)) + sub.substring(1);
+            }
+            return type;
+        }
+    }
 }
@@ -0,0 +1,106 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import com.timboudreau.adhoc.project.Exclusions;
+import com.timboudreau.adhoc.project.FavoritesTrackingNodeFactory;
+import com.timboudreau.adhoc.project.ProjectVisibility;
+import org.openide.filesystems.FileObject;
+import org.openide.nodes.AbstractNode;
+import org.openide.nodes.Node;
+
+/**
+ * The Files by Type node, which shows when its scan was cut short by the
+ * project's scan budget.
+ *
+ * @author Tim Boudreau
+ */
+public final class ByTypeNode extends AbstractNode {
+
+    private final ByTypeChildren kids;
+    private final FavoritesTrackingNodeFactory factory;
+
+    public ByTypeNode(FileObject root, ScanBudget budget, Exclusions exclusions,
+            ProjectVisibility visibility, FavoritesTrackingNodeFactory factory) {
+        this(new ByTypeChildren(root, budget, exclusions, visibility, factory), factory);
+    }
+
+    private ByTypeNode(ByTypeChildren kids, FavoritesTrackingNodeFactory factory) {
+        super(kids);
+        this.kids = kids;
+        this.factory = factory;
+        setDisplayName("Files by Type");
+        setName("byType");
+        setIconBaseWithExtension("com/timboudreau/adhoc/project/types.png");
+    }
+
+    /**
+     * Create a node listing the largest files found by this node's scan,
+     * which scans if this node has not.
+     */
+    public Node createLargestFilesNode() {
+        return factory.createNode(new TopFilesNode(kids, TopFilesNode.Kind.LARGEST));
+    }
+
+    /**
+     * Create a node listing the most recently modified files found by this
+     * node's scan, which scans if this node has not.
+     */
+    public Node createRecentFilesNode() {
+        return factory.createNode(new TopFilesNode(kids, TopFilesNode.Kind.RECENT));
+    }
+
+    /**
+     * Create a node showing groups of identical files among those found by
+     * this node's scan.
+     */
+    public Node createDuplicatesNode() {
+        return factory.createNode(new DuplicatesNode(kids));
+    }
+
+    public void setScanBudget(ScanBudget budget) {
+        kids.setScanBudget(budget);
+    }
+
+    public void setExclusions(Exclusions exclusions) {
+        kids.setExclusions(exclusions);
+    }
+
+    @Override
+    public String getHtmlDisplayName() {
+        if (kids.isPartial()) {
+            return getDisplayName() + "<font color=\"!controlShadow\"> (partial)";
+        }
+        return null;
+    }
+
+    @Override
+    public String getShortDescription() {
+        if (kids.isPartial()) {
+            return "Not all files were scanned - the limits on depth, files "
+                    + "and time set in the project's properties were reached";
+        }
+        return super.getShortDescription();
+    }
+
+    void partialChanged() {
+        fireDisplayNameChange(null, null);
+        fireShortDescriptionChange(null, null);
+    }
+}
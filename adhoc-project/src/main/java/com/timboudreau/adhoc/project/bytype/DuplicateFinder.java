@@ -0,0 +1,214 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import com.timboudreau.adhoc.project.bytype.FileTypeIndex.FileRecord;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Finds files with identical contents. Only files which share their size
+ * with another file are read at all; those are hashed in parallel, one task
+ * per file, reading large files through memory mapped buffers. Hashes are
+ * cached by path, and reused as long as the file's size and timestamp in
+ * the index are unchanged, so finding duplicates again after some files
+ * change only reads the changed ones.
+ *
+ * @author Tim Boudreau
+ */
+final class DuplicateFinder {
+
+    private static final RequestProcessor hashers = new RequestProcessor(
+            DuplicateFinder.class.getSimpleName(), Runtime.getRuntime().availableProcessors());
+    // Below this, mapping costs more than it saves
+    private static final int MAP_THRESHOLD = 256 * 1024;
+    private static final int MAP_CHUNK = 64 * 1024 * 1024;
+    private final ConcurrentMap<String, CachedHash> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Find groups of identical files among some files, which must all have
+     * a size that at least one other file has.
+     *
+     * @param root The folder paths are relative to
+     * @return Groups of two or more identical files, those wasting the most
+     * space first, or an empty list if interrupted
+     */
+    List<Group> find(Path root, Map<String, FileRecord> files) throws InterruptedException {
+        cache.keySet().retainAll(files.keySet());
+        Map<String, String> hashes = new HashMap<>();
+        Map<String, Future<String>> pending = new HashMap<>();
+        for (Map.Entry<String, FileRecord> e : files.entrySet()) {
+            FileRecord rec = e.getValue();
+            CachedHash cached = cache.get(e.getKey());
+            if (cached != null && cached.size == rec.size && cached.lastModified == rec.lastModified) {
+                hashes.put(e.getKey(), cached.hash);
+            } else {
+                pending.put(e.getKey(), hashers.submit(new Hasher(root.resolve(e.getKey()))));
+            }
+        }
+        try {
+            for (Map.Entry<String, Future<String>> e : pending.entrySet()) {
+                try {
+                    String hash = e.getValue().get();
+                    FileRecord rec = files.get(e.getKey());
+                    hashes.put(e.getKey(), hash);
+                    cache.put(e.getKey(), new CachedHash(rec.size, rec.lastModified, hash));
+                } catch (ExecutionException ex) {
+                    // deleted or unreadable - not a duplicate of anything
+                    Logger.getLogger(DuplicateFinder.class.getName()).log(Level.FINE,
+                            "Could not hash " + e.getKey(), ex.getCause());
+                }
+            }
+        } catch (InterruptedException ex) {
+            for (Future<String> f : pending.values()) {
+                f.cancel(true);
+            }
+            throw ex;
+        }
+        Map<String, List<String>> byContent = new HashMap<>();
+        for (Map.Entry<String, String> e : hashes.entrySet()) {
+            String key = files.get(e.getKey()).size + ":" + e.getValue();
+            List<String> paths = byContent.get(key);
+            if (paths == null) {
+                paths = new ArrayList<>(2);
+                byContent.put(key, paths);
+            }
+            paths.add(e.getKey());
+        }
+        List<Group> result = new ArrayList<>();
+        for (List<String> paths : byContent.values()) {
+            if (paths.size() > 1) {
+                Collections.sort(paths);
+                result.add(new Group(files.get(paths.get(0)).size, hashes.get(paths.get(0)), paths));
+            }
+        }
+        Collections.sort(result, new Comparator<Group>() {
+            @Override
+            public int compare(Group a, Group b) {
+                int res = Long.compare(b.wasted(), a.wasted());
+                return res != 0 ? res : a.paths.get(0).compareTo(b.paths.get(0));
+            }
+        });
+        return result;
+    }
+
+    static String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new AssertionError(ex);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MAP_THRESHOLD) {
+                ByteBuffer buf = ByteBuffer.allocate((int) size);
+                while (buf.hasRemaining() && channel.read(buf) >= 0) {
+                    // read it all
+                }
+                buf.flip();
+                digest.update(buf);
+            } else {
+                for (long pos = 0; pos < size; pos += MAP_CHUNK) {
+                    digest.update(channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                            Math.min(MAP_CHUNK, size - pos)));
+                }
+            }
+        }
+        return new BigInteger(1, digest.digest()).toString(16);
+    }
+
+    private static final class Hasher implements Callable<String> {
+
+        private final Path file;
+
+        Hasher(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public String call() throws IOException {
+            return hash(file);
+        }
+    }
+
+    private static final class CachedHash {
+
+        final long size;
+        final long lastModified;
+        final String hash;
+
+        CachedHash(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * A set of files with the same contents.
+     */
+    static final class Group {
+
+        final long size;
+        final String hash;
+        final List<String> paths;
+
+        Group(long size, String hash, List<String> paths) {
+            this.size = size;
+            this.hash = hash;
+            this.paths = paths;
+        }
+
+        long wasted() {
+            return size * (paths.size() - 1);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Group && ((Group) o).hash.equals(hash)
+                    && ((Group) o).paths.equals(paths);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode() * 31 + paths.hashCode();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import com.timboudreau.adhoc.project.bytype.DuplicateFinder.Group;
+import java.io.File;
+import java.text.NumberFormat;
+import java.util.List;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openide.loaders.DataObject;
+import org.openide.loaders.DataObjectNotFoundException;
+import org.openide.nodes.AbstractNode;
+import org.openide.nodes.ChildFactory;
+import org.openide.nodes.Children;
+import org.openide.nodes.FilterNode;
+import org.openide.nodes.Node;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Shows groups of files with identical contents, found among the files in
+ * the index behind a Files by Type node once its scan has finished, and
+ * found again a while after files change.
+ *
+ * @author Tim Boudreau
+ */
+final class DuplicatesNode extends AbstractNode {
+
+    private static final RequestProcessor rp = new RequestProcessor(DuplicatesNode.class.getSimpleName(), 1);
+    private static final int REFRESH_DELAY = 3000;
+
+    DuplicatesNode(ByTypeChildren owner) {
+        super(Children.create(new GroupFactory(owner), true));
+        setName("duplicates");
+        setDisplayName("Duplicates");
+        setShortDescription("Files with identical contents");
+        setIconBaseWithExtension("com/timboudreau/adhoc/project/type.png");
+    }
+
+    private static final class GroupFactory extends ChildFactory.Detachable<Group> implements ChangeListener, Runnable {
+
+        private final ByTypeChildren owner;
+        private final DuplicateFinder finder = new DuplicateFinder();
+        private final RequestProcessor.Task refreshTask = rp.create(this);
+        private final ChangeListener indexListener = new IndexListener();
+        private volatile boolean attached;
+        // whether the last createKeys() found the index not built yet
+        private volatile boolean waiting;
+        // the index duplicates were last looked for in
+        private volatile FileTypeIndex listed;
+
+        GroupFactory(ByTypeChildren owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        protected void addNotify() {
+            attached = true;
+            owner.attach();
+            owner.addStatsListener(this);
+            owner.addIndexListener(indexListener);
+        }
+
+        @Override
+        protected void removeNotify() {
+            attached = false;
+            refreshTask.cancel();
+            owner.removeStatsListener(this);
+            owner.removeIndexListener(indexListener);
+            owner.detach();
+        }
+
+        @Override
+        public void stateChanged(ChangeEvent ce) {
+            // Until the scan is done, IndexListener refreshes once it is
+            FileTypeIndex idx = owner.index();
+            if (attached && idx != null && idx.isBuilt()) {
+                refreshTask.schedule(REFRESH_DELAY);
+            }
+        }
+
+        @Override
+        public void run() {
+            refresh(false);
+        }
+
+        @Override
+        protected boolean createKeys(List<Group> list) {
+            // set before checking, so the index being built meanwhile is
+            // not missed
+            waiting = true;
+            FileTypeIndex idx = owner.index();
+            if (idx == null || !idx.isBuilt()) {
+                // nothing to compare yet; refreshed when the scan is done
+                return true;
+            }
+            waiting = false;
+            listed = idx;
+            File dir = FileUtil.toFile(idx.root());
+            try {
+                if (dir != null) {
+                    list.addAll(finder.find(dir.toPath(), idx.filesWithSharedSizes()));
+                }
+            } catch (InterruptedException ex) {
+                // closed
+            }
+            return true;
+        }
+
+        /**
+         * Looks for duplicates as soon as an index that was not built when
+         * last looked at is, or is replaced by a built one, rather than
+         * after the usual delay.
+         */
+        private final class IndexListener implements ChangeListener {
+
+            @Override
+            public void stateChanged(ChangeEvent ce) {
+                FileTypeIndex idx = owner.index();
+                if (attached && (waiting || idx != listed) && idx != null && idx.isBuilt()) {
+                    waiting = false;
+                    refresh(false);
+                }
+            }
+        }
+
+        @Override
+        protected Node createNodeForKey(Group key) {
+            FileTypeIndex idx = owner.index();
+            return idx == null ? null : new GroupNode(idx.root(), key);
+        }
+    }
+
+    private static final class GroupNode extends AbstractNode {
+
+        GroupNode(FileObject root, Group group) {
+            super(new GroupChildren(root, group));
+            String path = group.paths.get(0);
+            setName(group.hash);
+            setDisplayName(path.substring(path.lastIndexOf('/') + 1) + " ("
+                    + group.paths.size() + " copies, "
+                    + ByTypeChildren.formatSize(group.size) + " each)");
+            setShortDescription(group.paths.size() + " identical files of "
+                    + NumberFormat.getIntegerInstance().format(group.size)
+                    + " bytes; " + ByTypeChildren.formatSize(group.wasted())
+                    + " could be freed");
+            setIconBaseWithExtension("com/timboudreau/adhoc/project/type.png");
+        }
+    }
+
+    private static final class GroupChildren extends Children.Keys<String> {
+
+        private final FileObject root;
+        private final Group group;
+
+        GroupChildren(FileObject root, Group group) {
+            this.root = root;
+            this.group = group;
+        }
+
+        @Override
+        protected void addNotify() {
+            setKeys(group.paths);
+        }
+
+        @Override
+        protected Node[] createNodes(String key) {
+            FileObject fo = root.getFileObject(key);
+            try {
+                if (fo != null) {
+                    return new Node[]{new CopyNode(DataObject.find(fo).getNodeDelegate(), key)};
+                }
+            } catch (DataObjectNotFoundException ex) {
+                // fall through
+            }
+            return null;
+        }
+    }
+
+    private static final class CopyNode extends FilterNode {
+
+        private final String path;
+
+        CopyNode(Node orig, String path) {
+            super(orig);
+            this.path = path;
+        }
+
+        @Override
+        public String getHtmlDisplayName() {
+            int ix = path.lastIndexOf('/');
+            if (ix < 0) {
+                return super.getHtmlDisplayName();
+            }
+            return getDisplayName() + "<font color=\"!controlShadow\"> (" + path.substring(0, ix) + ')';
+        }
+    }
+}
@@ -0,0 +1,1106 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import com.timboudreau.adhoc.project.Exclusions;
+import com.timboudreau.adhoc.project.ProjectVisibility;
+import com.timboudreau.adhoc.project.bytype.ByTypeChildren.MimeType;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.event.ChangeListener;
+import org.openide.filesystems.FileChangeAdapter;
+import org.openide.filesystems.FileChangeListener;
+import org.openide.filesystems.FileEvent;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileRenameEvent;
+import org.openide.filesystems.FileUtil;
+import org.openide.util.ChangeSupport;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Index of the mime types of all files under a root folder, built once by a
+ * scan (or copied from the index of a folder above it) and then kept current
+ * by a recursive file listener, and shared by everything that shows those
+ * files through IndexService, so the set of types does not need to be
+ * recomputed each time a node is expanded. Files are keyed by their path
+ * relative to the root, and bucketed by type, so the files of one type are
+ * a lookup rather than another scan. A change event is fired only when the
+ * index is built and when a type appears or disappears; listeners for a
+ * single type are notified when its bucket changes. The number of files and
+ * bytes of each type are totalled as files are added and removed, and the
+ * largest and most recently modified files are kept in bounded TopFiles;
+ * stats listeners are told when either changes.
+ * <p/>
+ * For folders on disk, the index is saved to a snapshot in the cache
+ * directory a while after it changes, and can be restored from it and then
+ * reconciled against the disk by comparing folder timestamps. A scan that
+ * ran out of its ScanBudget leaves the index partial; partial indexes are
+ * not saved, since reconciling only looks below folders already known.
+ * Excluded and hidden files and folders are never added. Since a changed
+ * .gitignore can hide or reveal anything below it without changing any
+ * folder's timestamp, its timestamp is kept for each folder that has one,
+ * and reconciling relists everything under a folder whose .gitignore
+ * changed.
+ *
+ * @author Tim Boudreau
+ */
+final class FileTypeIndex extends FileChangeAdapter {
+
+    private static final RequestProcessor rp = new RequestProcessor(FileTypeIndex.class.getSimpleName(), 1);
+    private static final int SAVE_DELAY = 30000;
+    private static final String IGNORE_FILE = ".gitignore";
+    static final int TOP_FILES = 100;
+    private final FileObject root;
+    private final ScanBudget budget;
+    private final Exclusions exclusions;
+    private final ProjectVisibility visibility;
+    private final Map<String, FileRecord> records = new HashMap<>();
+    private final Map<String, Long> folders = new HashMap<>();
+    private final Map<String, Long> ignoreFiles = new HashMap<>();
+    private final Map<MimeType, Set<String>> filesForType = new HashMap<>();
+    private final Map<MimeType, TypeStats> statsForType = new HashMap<>();
+    private final ChangeSupport supp = new ChangeSupport(this);
+    private final ChangeSupport statsSupport = new ChangeSupport(this);
+    private final Map<MimeType, ChangeSupport> bucketSupport = new HashMap<>();
+    private final List<IndexedFiles.FilesListener> filesListeners = new CopyOnWriteArrayList<>();
+    private final TopFiles largest = new TopFiles(TOP_FILES);
+    private final TopFiles recent = new TopFiles(TOP_FILES);
+    private final MimeClassifier classifier = new MimeClassifier();
+    private final RequestProcessor.Task saveTask = rp.create(new Saver());
+    private final AtomicBoolean building = new AtomicBoolean();
+    private FileChangeListener listener;
+    // the folder the listener was added to on disk, or null if added to
+    // the root FileObject
+    private File listeningTo;
+    private volatile boolean disposed;
+    private volatile boolean built;
+    private volatile boolean partial;
+    private volatile boolean seeded;
+
+    FileTypeIndex(FileObject root, ScanBudget budget, Exclusions exclusions, ProjectVisibility visibility) {
+        this.root = root;
+        this.budget = budget;
+        this.exclusions = exclusions;
+        this.visibility = visibility;
+    }
+
+    FileObject root() {
+        return root;
+    }
+
+    ScanBudget budget() {
+        return budget;
+    }
+
+    Exclusions exclusions() {
+        return exclusions;
+    }
+
+    ProjectVisibility visibility() {
+        return visibility;
+    }
+
+    boolean isPartial() {
+        return partial;
+    }
+
+    void setPartial() {
+        partial = true;
+    }
+
+    boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Whether the index was filled from the index of a folder above it,
+     * rather than by walking its own folder.
+     */
+    boolean isSeeded() {
+        return seeded;
+    }
+
+    void setBuilt() {
+        built = true;
+        saveTask.schedule(SAVE_DELAY);
+        supp.fireChange();
+    }
+
+    /**
+     * Build the index on the calling thread, unless it is built or being
+     * built already: from the index of a folder above this one if there is
+     * a suitable one, else from the last session's snapshot, else by
+     * scanning. Gives up if the index is disposed meanwhile.
+     */
+    void build() {
+        if (built || disposed || !building.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final ScanBudget.Meter meter = budget.start();
+            // Listen before scanning, so nothing that changes during the
+            // scan is missed
+            startListening();
+            File dir = FileUtil.toFile(root);
+            if (dir != null && seedFromParent()) {
+                // The parent's index is listening, so is up to date
+                seeded = true;
+                setBuilt();
+                return;
+            }
+            if (dir != null && restore()) {
+                // Show what we have, then catch up with whatever changed
+                // since
+                setBuilt();
+                reconcile(dir.toPath());
+                if (partial) {
+                    supp.fireChange();
+                }
+                return;
+            }
+            boolean done;
+            if (dir != null) {
+                done = TreeWalker.walk(dir.toPath(), budget.maxDepth, visibility, new TreeWalker.PathVisitor() {
+                    @Override
+                    public boolean visitDirectory(String relativePath, Path dir, BasicFileAttributes attrs) {
+                        return addFolder(relativePath, dir, attrs);
+                    }
+
+                    @Override
+                    public boolean visitFile(String relativePath, Path file, BasicFileAttributes attrs) {
+                        if (!meter.tick()) {
+                            setPartial();
+                            return false;
+                        }
+                        add(relativePath, file, attrs);
+                        return !disposed;
+                    }
+                });
+            } else {
+                // not on disk, e.g. a memory filesystem
+                done = visit(root, 0, meter);
+            }
+            if (done || partial) {
+                // Out of budget still gets shown, marked as partial
+                setBuilt();
+            }
+        } finally {
+            building.set(false);
+        }
+    }
+
+    private boolean visit(FileObject fo, int depth, ScanBudget.Meter meter) {
+        if (depth == budget.maxDepth || !fo.isValid()) {
+            return false;
+        }
+        if (!visibility.isVisible(fo)) {
+            return !disposed;
+        }
+        if (depth > 0) {
+            String path = FileUtil.getRelativePath(root, fo);
+            if (path != null && exclusions.isExcluded(path)) {
+                return !disposed;
+            }
+        }
+        if (fo.isData() && fo.canRead() && fo.isValid()) {
+            if (!meter.tick()) {
+                setPartial();
+                return false;
+            }
+            add(fo);
+        }
+        if (depth != budget.maxDepth - 1 && fo.isFolder() && fo.canRead() && fo.isValid()) {
+            for (FileObject child : fo.getChildren()) {
+                if (!visit(child, depth + 1, meter)) {
+                    return false;
+                }
+            }
+        }
+        return !disposed;
+    }
+
+    /**
+     * Fill this index from a complete index of a folder above this one,
+     * instead of walking the same folders again.
+     *
+     * @return true if there was one to fill it from
+     */
+    private boolean seedFromParent() {
+        FileTypeIndex parent = IndexService.findCovering(this);
+        if (parent == null) {
+            return false;
+        }
+        String base = FileUtil.getRelativePath(parent.root, root);
+        String prefix = base + '/';
+        Map<String, FileRecord> files = new HashMap<>();
+        Map<String, Long> dirs = new HashMap<>();
+        Map<String, Long> ignores = new HashMap<>();
+        synchronized (parent) {
+            if (!parent.folders.containsKey(base)) {
+                // excluded or hidden in the parent
+                return false;
+            }
+            for (Map.Entry<String, FileRecord> e : parent.records.entrySet()) {
+                if (e.getKey().startsWith(prefix)) {
+                    files.put(e.getKey().substring(prefix.length()), e.getValue());
+                }
+            }
+            copyBelow(parent.folders, base, dirs);
+            copyBelow(parent.ignoreFiles, base, ignores);
+        }
+        Changes changes = new Changes();
+        synchronized (this) {
+            for (Map.Entry<String, Long> e : dirs.entrySet()) {
+                if (e.getKey().isEmpty() || !exclusions.isExcludedOrInExcludedFolder(e.getKey())) {
+                    folders.put(e.getKey(), e.getValue());
+                    Long stamp = ignores.get(e.getKey());
+                    if (stamp != null) {
+                        ignoreFiles.put(e.getKey(), stamp);
+                    }
+                }
+            }
+            for (Map.Entry<String, FileRecord> e : files.entrySet()) {
+                if (!exclusions.isExcludedOrInExcludedFolder(e.getKey())) {
+                    put(e.getKey(), e.getValue(), changes);
+                }
+            }
+        }
+        fire(changes);
+        return true;
+    }
+
+    private static void copyBelow(Map<String, Long> from, String base, Map<String, Long> into) {
+        String prefix = base + '/';
+        for (Map.Entry<String, Long> e : from.entrySet()) {
+            if (e.getKey().equals(base)) {
+                into.put("", e.getValue());
+            } else if (e.getKey().startsWith(prefix)) {
+                into.put(e.getKey().substring(prefix.length()), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Whether this index has everything a (built) index of a folder below
+     * its root with the given settings would have.  Files hidden by one
+     * project's rules may be visible under another's, so only an index
+     * using the same rules - such as that of a project in the same git
+     * checkout - can cover a folder.
+     */
+    boolean covers(FileObject folder, ScanBudget budget, Exclusions exclusions,
+            ProjectVisibility visibility) {
+        String path = FileUtil.getRelativePath(root, folder);
+        if (path == null || path.isEmpty() || !built || partial || disposed
+                || !visibility.hasSameRules(this.visibility)) {
+            return false;
+        }
+        int depth = path.split("/").length;
+        // Path patterns are relative to the root, so only the same names
+        // can be excluded from both
+        return depth + budget.maxDepth <= this.budget.maxDepth
+                && exclusions.equals(this.exclusions) && !exclusions.hasPathPatterns();
+    }
+
+    /**
+     * Called once the index is no longer used: stops listening and any
+     * scan, and saves the index now rather than after SAVE_DELAY.
+     */
+    void dispose() {
+        disposed = true;
+        synchronized (this) {
+            stopListening();
+        }
+        if (built) {
+            saveTask.schedule(0);
+        }
+    }
+
+    void addChangeListener(ChangeListener l) {
+        supp.addChangeListener(l);
+    }
+
+    void removeChangeListener(ChangeListener l) {
+        supp.removeChangeListener(l);
+    }
+
+    void addStatsListener(ChangeListener l) {
+        statsSupport.addChangeListener(l);
+    }
+
+    void removeStatsListener(ChangeListener l) {
+        statsSupport.removeChangeListener(l);
+    }
+
+    /**
+     * Listen for files being added and removed once the index is built.
+     */
+    void addFilesListener(IndexedFiles.FilesListener l) {
+        filesListeners.add(l);
+    }
+
+    void removeFilesListener(IndexedFiles.FilesListener l) {
+        filesListeners.remove(l);
+    }
+
+    synchronized void addChangeListener(MimeType type, ChangeListener l) {
+        ChangeSupport cs = bucketSupport.get(type);
+        if (cs == null) {
+            cs = new ChangeSupport(this);
+            bucketSupport.put(type, cs);
+        }
+        cs.addChangeListener(l);
+    }
+
+    synchronized void removeChangeListener(MimeType type, ChangeListener l) {
+        ChangeSupport cs = bucketSupport.get(type);
+        if (cs != null) {
+            cs.removeChangeListener(l);
+            if (!cs.hasListeners()) {
+                bucketSupport.remove(type);
+            }
+        }
+    }
+
+    /**
+     * Listen to the folders the index could contain.  A plain recursive
+     * listener would create (and keep) a FileObject for every folder under
+     * the root, including node_modules and ignored build output.
+     */
+    private synchronized void startListening() {
+        if (listener == null && !disposed) {
+            listener = FileUtil.weakFileChangeListener(this, root);
+            File dir = FileUtil.toFile(root);
+            if (dir != null) {
+                listeningTo = dir;
+                ListenFilter filter = new ListenFilter(dir);
+                FileUtil.addRecursiveListener(listener, dir, filter, filter);
+            } else {
+                root.addRecursiveListener(listener);
+            }
+        }
+    }
+
+    private synchronized void stopListening() {
+        if (listener != null) {
+            if (listeningTo != null) {
+                FileUtil.removeRecursiveListener(listener, listeningTo);
+            } else {
+                root.removeRecursiveListener(listener);
+            }
+            listener = null;
+            listeningTo = null;
+        }
+    }
+
+    /**
+     * Called when the project's visibility rules change, so folders they
+     * no longer hide are listened to (and ones they now hide are not).
+     */
+    synchronized void visibilityChanged() {
+        if (listener != null && !disposed) {
+            stopListening();
+            startListening();
+        }
+    }
+
+    synchronized List<MimeType> types() {
+        List<MimeType> result = new ArrayList<>(filesForType.keySet());
+        Collections.sort(result);
+        return result;
+    }
+
+    synchronized List<String> files(MimeType type) {
+        Set<String> bucket = filesForType.get(type);
+        return bucket == null ? new ArrayList<String>()
+                : new ArrayList<>(bucket);
+    }
+
+    /**
+     * The number of files of a type and their total size.
+     */
+    synchronized TypeStats stats(MimeType type) {
+        TypeStats stats = statsForType.get(type);
+        return stats == null ? new TypeStats() : stats.copy();
+    }
+
+    /**
+     * The largest files, largest first.
+     */
+    synchronized List<String> largestFiles() {
+        if (largest.isStale()) {
+            largest.clear();
+            for (Map.Entry<String, FileRecord> e : records.entrySet()) {
+                largest.offer(e.getKey(), e.getValue().size);
+            }
+        }
+        return largest.paths();
+    }
+
+    /**
+     * The most recently modified files, newest first.
+     */
+    synchronized List<String> recentFiles() {
+        if (recent.isStale()) {
+            recent.clear();
+            for (Map.Entry<String, FileRecord> e : records.entrySet()) {
+                recent.offer(e.getKey(), e.getValue().lastModified);
+            }
+        }
+        return recent.paths();
+    }
+
+    /**
+     * Files which are not empty and have the same size as some other file -
+     * the only ones which can have duplicates.
+     */
+    synchronized Map<String, FileRecord> filesWithSharedSizes() {
+        Map<Long, String> lastWithSize = new HashMap<>();
+        Map<String, FileRecord> result = new HashMap<>();
+        for (Map.Entry<String, FileRecord> e : records.entrySet()) {
+            long size = e.getValue().size;
+            if (size > 0) {
+                String prev = lastWithSize.put(size, e.getKey());
+                if (prev != null) {
+                    result.put(prev, records.get(prev));
+                    result.put(e.getKey(), e.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    synchronized FileRecord record(String path) {
+        return records.get(path);
+    }
+
+    synchronized List<String> paths() {
+        return new ArrayList<>(records.keySet());
+    }
+
+    void add(FileObject fo) {
+        String path = FileUtil.getRelativePath(root, fo);
+        if (path != null) {
+            Changes changes = new Changes();
+            put(path, new FileRecord(classifier.classify(fo), fo.getSize(),
+                    fo.lastModified().getTime()), changes);
+            fire(changes);
+        }
+    }
+
+    void add(String path, Path file, BasicFileAttributes attrs) {
+        if (exclusions.isExcluded(path)) {
+            return;
+        }
+        MimeType type = classifier.classify(file.getFileName().toString(), file);
+        if (type != null) {
+            Changes changes = new Changes();
+            put(path, new FileRecord(type, attrs.size(),
+                    attrs.lastModifiedTime().toMillis()), changes);
+            fire(changes);
+        }
+    }
+
+    /**
+     * Record a folder found by a scan.
+     *
+     * @return false if the folder is excluded and should not be listed
+     */
+    boolean addFolder(String path, Path dir, BasicFileAttributes attrs) {
+        if (exclusions.isExcluded(path)) {
+            return false;
+        }
+        long ignoreFileStamp = ignoreFileStamp(dir);
+        synchronized (this) {
+            folders.put(path, attrs.lastModifiedTime().toMillis());
+            if (ignoreFileStamp != 0) {
+                ignoreFiles.put(path, ignoreFileStamp);
+            } else {
+                ignoreFiles.remove(path);
+            }
+        }
+        return true;
+    }
+
+    private static long ignoreFileStamp(Path dir) {
+        // 0 if there is none
+        return new File(dir.toFile(), IGNORE_FILE).lastModified();
+    }
+
+    private synchronized void put(String path, FileRecord rec, Changes changes) {
+        FileRecord old = records.put(path, rec);
+        if (old == null && built) {
+            changes.added.add(path);
+        }
+        if (largest.offer(path, rec.size) | recent.offer(path, rec.lastModified)) {
+            changes.top = true;
+        }
+        if (old != null) {
+            if (old.type.equals(rec.type)) {
+                if (old.size != rec.size) {
+                    statsForType.get(rec.type).bytes += rec.size - old.size;
+                    changes.stats = true;
+                }
+                return;
+            }
+            removeFromBucket(old, path, changes);
+        }
+        Set<String> bucket = filesForType.get(rec.type);
+        if (bucket == null) {
+            bucket = new HashSet<>();
+            filesForType.put(rec.type, bucket);
+            statsForType.put(rec.type, new TypeStats());
+            changes.types = true;
+        }
+        bucket.add(path);
+        TypeStats stats = statsForType.get(rec.type);
+        stats.files++;
+        stats.bytes += rec.size;
+        changes.buckets.add(rec.type);
+        changes.stats = true;
+    }
+
+    private synchronized void remove(String path, Changes changes) {
+        FileRecord old = records.remove(path);
+        if (old != null) {
+            removeFromBucket(old, path, changes);
+            forget(path, changes);
+            if (built) {
+                changes.removed.add(path);
+            }
+            return;
+        }
+        // Not a file we know, so possibly a folder - drop everything below it
+        folders.remove(path);
+        ignoreFiles.remove(path);
+        String prefix = path + '/';
+        for (Iterator<Map.Entry<String, FileRecord>> it = records.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, FileRecord> e = it.next();
+            if (e.getKey().startsWith(prefix)) {
+                it.remove();
+                removeFromBucket(e.getValue(), e.getKey(), changes);
+                forget(e.getKey(), changes);
+                if (built) {
+                    changes.removed.add(e.getKey());
+                }
+            }
+        }
+        for (Iterator<String> it = folders.keySet().iterator(); it.hasNext();) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+        for (Iterator<String> it = ignoreFiles.keySet().iterator(); it.hasNext();) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+    private void removeFromBucket(FileRecord rec, String path, Changes changes) {
+        Set<String> bucket = filesForType.get(rec.type);
+        if (bucket != null && bucket.remove(path)) {
+            changes.buckets.add(rec.type);
+            changes.stats = true;
+            if (bucket.isEmpty()) {
+                filesForType.remove(rec.type);
+                statsForType.remove(rec.type);
+                changes.types = true;
+            } else {
+                TypeStats stats = statsForType.get(rec.type);
+                stats.files--;
+                stats.bytes -= rec.size;
+            }
+        }
+    }
+
+    private void forget(String path, Changes changes) {
+        if (largest.remove(path) | recent.remove(path)) {
+            changes.top = true;
+        }
+    }
+
+    private void fire(Changes changes) {
+        if (!changes.stats && !changes.top) {
+            return;
+        }
+        List<ChangeSupport> toFire = new ArrayList<>(changes.buckets.size());
+        synchronized (this) {
+            for (MimeType type : changes.buckets) {
+                ChangeSupport cs = bucketSupport.get(type);
+                if (cs != null) {
+                    toFire.add(cs);
+                }
+            }
+        }
+        if (built) {
+            saveTask.schedule(SAVE_DELAY);
+        }
+        if (changes.types) {
+            supp.fireChange();
+        }
+        for (ChangeSupport cs : toFire) {
+            cs.fireChange();
+        }
+        statsSupport.fireChange();
+        if (!changes.added.isEmpty() || !changes.removed.isEmpty()) {
+            for (IndexedFiles.FilesListener l : filesListeners) {
+                l.filesChanged(root, Collections.unmodifiableList(changes.added),
+                        Collections.unmodifiableList(changes.removed));
+            }
+        }
+    }
+
+    /**
+     * Populate the index from a snapshot saved by an earlier session, if
+     * there is one.
+     *
+     * @return true if a snapshot was loaded
+     */
+    boolean restore() {
+        File file = FileUtil.toFile(root) == null ? null : IndexSnapshot.fileFor(root);
+        if (file == null || !file.exists()) {
+            return false;
+        }
+        IndexSnapshot snapshot;
+        try {
+            snapshot = IndexSnapshot.read(file);
+        } catch (IOException ex) {
+            Logger.getLogger(FileTypeIndex.class.getName()).log(Level.INFO,
+                    "Discarding unreadable snapshot " + file, ex);
+            file.delete();
+            return false;
+        }
+        if (snapshot.maxDepth != budget.maxDepth
+                || !snapshot.exclusions.equals(exclusions.patterns())) {
+            // Scanned with different settings - reconciling would not find
+            // folders the snapshot never went into
+            return false;
+        }
+        Changes changes = new Changes();
+        synchronized (this) {
+            folders.putAll(snapshot.folders);
+            ignoreFiles.putAll(snapshot.ignoreFiles);
+            for (Map.Entry<String, FileRecord> e : snapshot.files.entrySet()) {
+                put(e.getKey(), e.getValue(), changes);
+            }
+        }
+        fire(changes);
+        return true;
+    }
+
+    /**
+     * Bring an index restored from a snapshot up to date with the disk.
+     * Folders whose timestamp has not changed have the same children as
+     * when the snapshot was taken and are not listed again, but the files
+     * in them are, since writing to a file does not touch its folder;
+     * changed folders are listed, and new ones scanned. Also used to catch up after
+     * a .gitignore in the project changes.
+     */
+    void reconcile(Path dir) {
+        final ScanBudget.Meter meter = budget.start();
+        Map<String, Long> knownFolders;
+        Map<String, Long> knownIgnoreFiles;
+        Map<String, List<String>> knownFiles = new HashMap<>();
+        Map<String, List<String>> knownSubfolders = new HashMap<>();
+        synchronized (this) {
+            knownFolders = new HashMap<>(folders);
+            knownIgnoreFiles = new HashMap<>(ignoreFiles);
+            for (String path : records.keySet()) {
+                childrenOf(knownFiles, parentOf(path)).add(path);
+            }
+            for (String path : folders.keySet()) {
+                if (!path.isEmpty()) {
+                    childrenOf(knownSubfolders, parentOf(path)).add(path);
+                }
+            }
+        }
+        TreeWalker.PathVisitor scanner = new TreeWalker.PathVisitor() {
+            @Override
+            public boolean visitDirectory(String relativePath, Path dir, BasicFileAttributes attrs) {
+                return addFolder(relativePath, dir, attrs);
+            }
+
+            @Override
+            public boolean visitFile(String relativePath, Path file, BasicFileAttributes attrs) {
+                if (!meter.tick()) {
+                    return false;
+                }
+                add(relativePath, file, attrs);
+                return true;
+            }
+        };
+        LinkedList<String> queue = new LinkedList<>();
+        Set<String> relistAll = new HashSet<>();
+        // folders seen, so new folders that link to them are not walked
+        Set<Object> visited = TreeWalker.visitedSet();
+        queue.add("");
+        while (!queue.isEmpty()) {
+            String path = queue.pop();
+            Path folder = path.isEmpty() ? dir : dir.resolve(path);
+            List<String> subfolders = childrenOf(knownSubfolders, path);
+            BasicFileAttributes attrs = attributes(folder);
+            if (attrs == null || !attrs.isDirectory()) {
+                Changes changes = new Changes();
+                remove(path, changes);
+                fire(changes);
+                continue;
+            }
+            visited.add(TreeWalker.fileKey(folder, attrs, true));
+            Long known = knownFolders.get(path);
+            Long knownIgnoreFile = knownIgnoreFiles.get(path);
+            if (relistAll.contains(path) || ignoreFileStamp(folder)
+                    != (knownIgnoreFile == null ? 0L : knownIgnoreFile)) {
+                // the .gitignore here or above changed
+                relistAll.addAll(subfolders);
+                known = null;
+            }
+            if (known != null && known == attrs.lastModifiedTime().toMillis()) {
+                if (!restat(dir, childrenOf(knownFiles, path), meter)) {
+                    setPartial();
+                    return;
+                }
+                queue.addAll(subfolders);
+            } else if (!relist(path, folder, attrs, childrenOf(knownFiles, path),
+                    subfolders, queue, visited, scanner, meter)) {
+                setPartial();
+                return;
+            }
+        }
+        saveTask.schedule(SAVE_DELAY);
+    }
+
+    /**
+     * List one changed folder, updating what is known about its children.
+     *
+     * @return false if the scan budget ran out
+     */
+    /**
+     * Update the records of files in a folder which has not changed, whose
+     * sizes and dates may have.
+     */
+    private boolean restat(Path dir, List<String> knownFiles, ScanBudget.Meter meter) {
+        for (String path : knownFiles) {
+            if (!meter.tick()) {
+                return false;
+            }
+            Path file = dir.resolve(path);
+            BasicFileAttributes attrs = attributes(file);
+            FileRecord rec = record(path);
+            if (attrs == null || attrs.isDirectory()) {
+                Changes changes = new Changes();
+                remove(path, changes);
+                fire(changes);
+            } else if (rec == null || rec.size != attrs.size()
+                    || rec.lastModified != attrs.lastModifiedTime().toMillis()) {
+                add(path, file, attrs);
+            }
+        }
+        return true;
+    }
+
+    private boolean relist(String path, Path folder, BasicFileAttributes folderAttrs,
+            List<String> knownFiles, List<String> knownSubfolders,
+            List<String> queue, Set<Object> visited, TreeWalker.PathVisitor scanner, ScanBudget.Meter meter) {
+        Set<String> seen = new HashSet<>();
+        int depth = path.isEmpty() ? 0 : depth(path);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+            for (Path p : stream) {
+                BasicFileAttributes attrs = attributes(p);
+                if (attrs == null || !visibility.isVisible(p.toFile())) {
+                    continue;
+                }
+                String name = p.getFileName().toString();
+                String childPath = path.isEmpty() ? name : path + '/' + name;
+                if (exclusions.isExcluded(childPath)) {
+                    continue;
+                }
+                seen.add(childPath);
+                if (attrs.isDirectory()) {
+                    if (knownSubfolders.contains(childPath)) {
+                        queue.add(childPath);
+                    } else if (!TreeWalker.walk(p, childPath, depth + 1, budget.maxDepth, visibility, visited, scanner)) {
+                        return false;
+                    }
+                } else if (!meter.tick()) {
+                    return false;
+                } else {
+                    FileRecord rec = record(childPath);
+                    if (rec == null || rec.size != attrs.size()
+                            || rec.lastModified != attrs.lastModifiedTime().toMillis()) {
+                        add(childPath, p, attrs);
+                    }
+                }
+            }
+        } catch (IOException | DirectoryIteratorException ex) {
+            Logger.getLogger(FileTypeIndex.class.getName()).log(Level.FINE,
+                    "Could not list " + folder, ex);
+            return true;
+        }
+        Changes changes = new Changes();
+        for (String gone : knownFiles) {
+            if (!seen.contains(gone)) {
+                remove(gone, changes);
+            }
+        }
+        for (String gone : knownSubfolders) {
+            if (!seen.contains(gone)) {
+                remove(gone, changes);
+            }
+        }
+        fire(changes);
+        addFolder(path, folder, folderAttrs);
+        return true;
+    }
+
+    private static BasicFileAttributes attributes(Path p) {
+        try {
+            return Files.readAttributes(p, BasicFileAttributes.class);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private static List<String> childrenOf(Map<String, List<String>> map, String path) {
+        List<String> result = map.get(path);
+        if (result == null) {
+            result = new ArrayList<>();
+            map.put(path, result);
+        }
+        return result;
+    }
+
+    private static String parentOf(String path) {
+        int ix = path.lastIndexOf('/');
+        return ix < 0 ? "" : path.substring(0, ix);
+    }
+
+    private static int depth(String path) {
+        int result = 1;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    private boolean isIndexable(FileObject fo) {
+        int depth = 0;
+        FileObject f = fo;
+        while (f != null && !f.equals(root)) {
+            if (!f.isValid() || !visibility.isVisible(f)) {
+                return false;
+            }
+            depth++;
+            f = f.getParent();
+        }
+        return f != null && depth < budget.maxDepth
+                && !exclusions.isExcludedOrInExcludedFolder(FileUtil.getRelativePath(root, fo));
+    }
+
+    /**
+     * Whether a folder is a symbolic link to a folder it is inside, which
+     * would be walked round and round.
+     */
+    private static boolean isLinkToAncestor(FileObject folder) {
+        File f = FileUtil.toFile(folder);
+        if (f == null || !Files.isSymbolicLink(f.toPath())) {
+            return false;
+        }
+        try {
+            Path target = f.toPath().toRealPath();
+            return f.toPath().getParent().toRealPath().startsWith(target);
+        } catch (IOException ex) {
+            // broken link
+            return true;
+        }
+    }
+
+    private void addTree(FileObject fo) {
+        if (!isIndexable(fo)) {
+            return;
+        }
+        if (fo.isData()) {
+            add(fo);
+        } else if (fo.isFolder() && !isLinkToAncestor(fo)) {
+            for (FileObject child : fo.getChildren()) {
+                addTree(child);
+            }
+        }
+    }
+
+    @Override
+    public void fileFolderCreated(FileEvent fe) {
+        if (built) {
+            // may have been moved in with content
+            addTree(fe.getFile());
+        }
+    }
+
+    @Override
+    public void fileDataCreated(FileEvent fe) {
+        if (built) {
+            addTree(fe.getFile());
+        }
+    }
+
+    @Override
+    public void fileChanged(FileEvent fe) {
+        // content-based resolvers may classify it differently now
+        if (built) {
+            addTree(fe.getFile());
+        }
+    }
+
+    @Override
+    public void fileDeleted(FileEvent fe) {
+        String path = FileUtil.getRelativePath(root, fe.getFile());
+        if (path != null) {
+            Changes changes = new Changes();
+            remove(path, changes);
+            fire(changes);
+        }
+    }
+
+    @Override
+    public void fileRenamed(FileRenameEvent fe) {
+        FileObject fo = fe.getFile();
+        FileObject parent = fo.getParent();
+        String parentPath = parent == null ? null : FileUtil.getRelativePath(root, parent);
+        if (parentPath != null) {
+            String oldName = fe.getExt() == null || fe.getExt().isEmpty()
+                    ? fe.getName() : fe.getName() + '.' + fe.getExt();
+            String oldPath = parentPath.isEmpty() ? oldName : parentPath + '/' + oldName;
+            Changes changes = new Changes();
+            remove(oldPath, changes);
+            fire(changes);
+        }
+        if (built) {
+            addTree(fo);
+        }
+    }
+
+    static final class FileRecord {
+
+        final MimeType type;
+        final long size;
+        final long lastModified;
+
+        FileRecord(MimeType type, long size, long lastModified) {
+            this.type = type;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    static final class TypeStats {
+
+        int files;
+        long bytes;
+
+        TypeStats copy() {
+            TypeStats result = new TypeStats();
+            result.files = files;
+            result.bytes = bytes;
+            return result;
+        }
+    }
+
+    private static final class Changes {
+
+        boolean types;
+        // any file added, removed or resized
+        boolean stats;
+        // the largest or most recent files changed
+        boolean top;
+        final Set<MimeType> buckets = new HashSet<>();
+        // paths of files added once the index was built, and removed
+        final List<String> added = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+    }
+
+    /**
+     * Which folders to listen in: the same ones a scan would walk.
+     */
+    private final class ListenFilter implements FileFilter, Callable<Boolean> {
+
+        private final Path dir;
+
+        ListenFilter(File dir) {
+            this.dir = dir.toPath();
+        }
+
+        @Override
+        public boolean accept(File file) {
+            Path rel = dir.relativize(file.toPath());
+            if (rel.getNameCount() >= budget.maxDepth) {
+                return false;
+            }
+            String path = rel.toString().replace(File.separatorChar, '/');
+            return !exclusions.isExcludedOrInExcludedFolder(path) && visibility.isVisible(file);
+        }
+
+        @Override
+        public Boolean call() {
+            return disposed;
+        }
+    }
+
+    private final class Saver implements Runnable {
+
+        @Override
+        public void run() {
+            if (!built || partial || FileUtil.toFile(root) == null) {
+                return;
+            }
+            IndexSnapshot snapshot;
+            synchronized (FileTypeIndex.this) {
+                snapshot = new IndexSnapshot(new HashMap<>(records), new HashMap<>(folders),
+                        new HashMap<>(ignoreFiles), budget.maxDepth, exclusions.patterns());
+            }
+            File file = IndexSnapshot.fileFor(root);
+            try {
+                snapshot.write(file);
+            } catch (IOException ex) {
+                Logger.getLogger(FileTypeIndex.class.getName()).log(Level.INFO,
+                        "Could not save snapshot " + file, ex);
+            }
+        }
+    }
+}
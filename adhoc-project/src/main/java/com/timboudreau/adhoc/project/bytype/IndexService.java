@@ -0,0 +1,143 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import com.timboudreau.adhoc.project.Exclusions;
+import com.timboudreau.adhoc.project.ProjectVisibility;
+import java.util.HashMap;
+import java.util.Map;
+import org.openide.filesystems.FileObject;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Shares one FileTypeIndex among everything showing the files under a
+ * folder with the same scan settings - the views of a project, and nodes
+ * recreated for it after being collected - so the folder is scanned once.
+ * Indexes are reference counted; one nobody has used for RELEASE_DELAY is
+ * disposed, so collapsing and expanding a node does not throw away its
+ * index. A new index for a folder inside one whose index is complete is
+ * filled from that index rather than by walking the folder again.
+ *
+ * @author Tim Boudreau
+ */
+final class IndexService {
+
+    private static final RequestProcessor rp = new RequestProcessor(IndexService.class.getSimpleName(), 1);
+    private static final int RELEASE_DELAY = 60000;
+    private static final Map<Key, Entry> entries = new HashMap<>();
+
+    private IndexService() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Get the index for a folder, creating it if need be. Each call must be
+     * matched by a call to release().
+     */
+    static synchronized FileTypeIndex acquire(FileObject root, ScanBudget budget,
+            Exclusions exclusions, ProjectVisibility visibility) {
+        Key key = new Key(root, budget, exclusions, visibility);
+        Entry e = entries.get(key);
+        if (e == null) {
+            e = new Entry(key, new FileTypeIndex(root, budget, exclusions, visibility));
+            entries.put(key, e);
+        }
+        e.refs++;
+        e.releaseTask.cancel();
+        return e.index;
+    }
+
+    static synchronized void release(FileTypeIndex index) {
+        Entry e = entries.get(new Key(index.root(), index.budget(), index.exclusions(), index.visibility()));
+        if (e != null && e.index == index && --e.refs == 0) {
+            e.releaseTask.schedule(RELEASE_DELAY);
+        }
+    }
+
+    /**
+     * Find a complete index of a folder above the root of an index, which
+     * has everything that index would find by scanning.
+     *
+     * @return An index or null
+     */
+    static synchronized FileTypeIndex findCovering(FileTypeIndex index) {
+        for (Entry e : entries.values()) {
+            if (e.index != index && e.index.covers(index.root(), index.budget(), index.exclusions(), index.visibility())) {
+                return e.index;
+            }
+        }
+        return null;
+    }
+
+    private static final class Entry implements Runnable {
+
+        private final Key key;
+        private final FileTypeIndex index;
+        private final RequestProcessor.Task releaseTask = rp.create(this);
+        private int refs;
+
+        Entry(Key key, FileTypeIndex index) {
+            this.key = key;
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            synchronized (IndexService.class) {
+                if (refs > 0 || entries.get(key) != this) {
+                    return;
+                }
+                entries.remove(key);
+            }
+            index.dispose();
+        }
+    }
+
+    private static final class Key {
+
+        private final FileObject root;
+        private final ScanBudget budget;
+        private final Exclusions exclusions;
+        // one per project; projects with the same rules can share an
+        // index, so it is compared by rules and not hashed
+        private final ProjectVisibility visibility;
+
+        Key(FileObject root, ScanBudget budget, Exclusions exclusions, ProjectVisibility visibility) {
+            this.root = root;
+            this.budget = budget;
+            this.exclusions = exclusions;
+            this.visibility = visibility;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return k.root.equals(root) && k.budget.equals(budget) && k.exclusions.equals(exclusions)
+                    && k.visibility.hasSameRules(visibility);
+        }
+
+        @Override
+        public int hashCode() {
+            return (root.hashCode() * 31 + budget.hashCode()) * 31 + exclusions.hashCode();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import com.timboudreau.adhoc.project.AdhocProject;
+import com.timboudreau.adhoc.project.bytype.ByTypeChildren.MimeType;
+import com.timboudreau.adhoc.project.bytype.FileTypeIndex.FileRecord;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.openide.filesystems.FileObject;
+import org.openide.modules.Places;
+
+/**
+ * Compact binary snapshot of a FileTypeIndex, stored in the user cache
+ * directory so the Files by Type node can be populated immediately after a
+ * restart. Paths are sorted and front-coded against the previous path, mime
+ * types are written once and referenced by index, and numbers are written
+ * as variable length integers. The depth the folder was scanned to and the
+ * exclusion patterns are recorded, since a snapshot cannot be reconciled
+ * against different ones, as are the timestamps of .gitignore files.
+ *
+ * @author Tim Boudreau
+ */
+final class IndexSnapshot {
+
+    private static final int MAGIC = 0x41544934;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    final Map<String, FileRecord> files;
+    final Map<String, Long> folders;
+    final Map<String, Long> ignoreFiles;
+    final int maxDepth;
+    final String exclusions;
+
+    IndexSnapshot(Map<String, FileRecord> files, Map<String, Long> folders,
+            Map<String, Long> ignoreFiles, int maxDepth, String exclusions) {
+        this.files = files;
+        this.folders = folders;
+        this.ignoreFiles = ignoreFiles;
+        this.maxDepth = maxDepth;
+        this.exclusions = exclusions;
+    }
+
+    static File fileFor(FileObject root) {
+        return Places.getCacheSubfile("adhoc-projects/bytype/"
+                + AdhocProject.prefsNodeName(root) + ".idx");
+    }
+
+    static IndexSnapshot read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.remaining() < 4 || buf.getInt() != MAGIC) {
+                throw new IOException("Not an index snapshot: " + file);
+            }
+            try {
+                int maxDepth = readVarInt(buf);
+                String exclusions = readString(buf);
+                int typeCount = readCount(buf, 1);
+                List<MimeType> types = new ArrayList<>(typeCount);
+                for (int i = 0; i < typeCount; i++) {
+                    types.add(MimeType.of(readString(buf)));
+                }
+                Map<String, Long> folders = readPathsAndTimes(buf);
+                Map<String, Long> ignoreFiles = readPathsAndTimes(buf);
+                // path prefix and length, type, date and size
+                int fileCount = readCount(buf, 5);
+                Map<String, FileRecord> files = new HashMap<>(fileCount * 2);
+                String prev = "";
+                for (int i = 0; i < fileCount; i++) {
+                    prev = readPath(buf, prev);
+                    MimeType type = types.get(readVarInt(buf));
+                    long lastModified = readVarLong(buf);
+                    long size = readVarLong(buf);
+                    files.put(prev, new FileRecord(type, size, lastModified));
+                }
+                return new IndexSnapshot(files, folders, ignoreFiles, maxDepth, exclusions);
+            } catch (RuntimeException ex) {
+                // truncated or corrupted
+                throw new IOException("Bad index snapshot " + file, ex);
+            }
+        }
+    }
+
+    void write(File file) throws IOException {
+        List<String> typeNames = new ArrayList<>();
+        Map<String, Integer> typeIndices = new HashMap<>();
+        for (FileRecord rec : files.values()) {
+            if (!typeIndices.containsKey(rec.type.type)) {
+                typeIndices.put(rec.type.type, typeNames.size());
+                typeNames.add(rec.type.type);
+            }
+        }
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            writeVarLong(out, maxDepth);
+            writeString(out, exclusions);
+            writeVarLong(out, typeNames.size());
+            for (String type : typeNames) {
+                writeString(out, type);
+            }
+            writePathsAndTimes(out, folders);
+            writePathsAndTimes(out, ignoreFiles);
+            List<String> paths = new ArrayList<>(files.keySet());
+            Collections.sort(paths);
+            writeVarLong(out, paths.size());
+            String prev = "";
+            for (String path : paths) {
+                FileRecord rec = files.get(path);
+                writePath(out, prev, path);
+                writeVarLong(out, typeIndices.get(rec.type.type));
+                writeVarLong(out, Math.max(0L, rec.lastModified));
+                writeVarLong(out, rec.size);
+                prev = path;
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writePathsAndTimes(DataOutputStream out, Map<String, Long> times) throws IOException {
+        List<String> paths = new ArrayList<>(times.keySet());
+        Collections.sort(paths);
+        writeVarLong(out, paths.size());
+        String prev = "";
+        for (String path : paths) {
+            writePath(out, prev, path);
+            writeVarLong(out, Math.max(0L, times.get(path)));
+            prev = path;
+        }
+    }
+
+    private static Map<String, Long> readPathsAndTimes(ByteBuffer buf) throws IOException {
+        // path prefix and length, and date
+        int count = readCount(buf, 3);
+        Map<String, Long> result = new HashMap<>(count * 2);
+        String prev = "";
+        for (int i = 0; i < count; i++) {
+            prev = readPath(buf, prev);
+            result.put(prev, readVarLong(buf));
+        }
+        return result;
+    }
+
+    private static void writePath(DataOutputStream out, String prev, String path) throws IOException {
+        int max = Math.min(prev.length(), path.length());
+        int shared = 0;
+        while (shared < max && prev.charAt(shared) == path.charAt(shared)) {
+            shared++;
+        }
+        if (shared > 0 && Character.isHighSurrogate(path.charAt(shared - 1))) {
+            // don't split a surrogate pair
+            shared--;
+        }
+        writeVarLong(out, shared);
+        writeString(out, path.substring(shared));
+    }
+
+    private static String readPath(ByteBuffer buf, String prev) throws IOException {
+        int shared = readVarInt(buf);
+        return prev.substring(0, shared) + readString(buf);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) throws IOException {
+        byte[] bytes = new byte[readCount(buf, 1)];
+        buf.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long val) throws IOException {
+        if (val < 0) {
+            throw new IOException("Negative value " + val);
+        }
+        while ((val & ~0x7FL) != 0) {
+            out.writeByte((int) ((val & 0x7F) | 0x80));
+            val >>>= 7;
+        }
+        out.writeByte((int) val);
+    }
+
+    private static long readVarLong(ByteBuffer buf) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed number");
+    }
+
+    private static int readVarInt(ByteBuffer buf) throws IOException {
+        long result = readVarLong(buf);
+        if (result > Integer.MAX_VALUE) {
+            throw new IOException("Number too large: " + result);
+        }
+        return (int) result;
+    }
+
+    /**
+     * Read the number of items or bytes that follow, checking there is
+     * room for them, so a corrupted count cannot make us allocate more
+     * than the file holds.
+     *
+     * @param minBytes The fewest bytes each item takes
+     */
+    private static int readCount(ByteBuffer buf, int minBytes) throws IOException {
+        int result = readVarInt(buf);
+        if ((long) result * minBytes > buf.remaining()) {
+            throw new IOException("Count " + result + " too large for "
+                    + buf.remaining() + " remaining bytes");
+        }
+        return result;
+    }
+}
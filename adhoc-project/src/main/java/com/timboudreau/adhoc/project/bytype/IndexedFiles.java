@@ -0,0 +1,110 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import com.timboudreau.adhoc.project.Exclusions;
+import com.timboudreau.adhoc.project.ProjectVisibility;
+import java.util.EventListener;
+import java.util.List;
+import javax.swing.event.ChangeListener;
+import org.openide.filesystems.FileObject;
+
+/**
+ * The files found under a folder by the scan behind Files by Type, for
+ * use outside this package; shares the index with the project's nodes.
+ * Must be released when no longer needed.
+ *
+ * @author Tim Boudreau
+ */
+public final class IndexedFiles {
+
+    private final FileTypeIndex index;
+    private boolean released;
+
+    private IndexedFiles(FileTypeIndex index) {
+        this.index = index;
+    }
+
+    public static IndexedFiles acquire(FileObject root, ScanBudget budget,
+            Exclusions exclusions, ProjectVisibility visibility) {
+        return new IndexedFiles(IndexService.acquire(root, budget, exclusions, visibility));
+    }
+
+    public FileObject root() {
+        return index.root();
+    }
+
+    /**
+     * Scan the folder on the calling thread, if nothing has yet.
+     */
+    public void build() {
+        index.build();
+    }
+
+    public boolean isBuilt() {
+        return index.isBuilt();
+    }
+
+    /**
+     * The paths of the files found, relative to the root.
+     */
+    public List<String> paths() {
+        return index.paths();
+    }
+
+    /**
+     * Listen for the scan finishing.
+     */
+    public void addChangeListener(ChangeListener l) {
+        index.addChangeListener(l);
+    }
+
+    public void removeChangeListener(ChangeListener l) {
+        index.removeChangeListener(l);
+    }
+
+    /**
+     * Listen for files being added or removed once the scan is done, so
+     * a copy of the paths can be kept up to date without reading them all
+     * again.
+     */
+    public void addFilesListener(FilesListener l) {
+        index.addFilesListener(l);
+    }
+
+    public void removeFilesListener(FilesListener l) {
+        index.removeFilesListener(l);
+    }
+
+    public synchronized void release() {
+        if (!released) {
+            released = true;
+            IndexService.release(index);
+        }
+    }
+
+    /**
+     * Told the paths, relative to the root, of files added to and removed
+     * from an index; a folder removed is reported as the files in it.
+     */
+    public interface FilesListener extends EventListener {
+
+        void filesChanged(FileObject root, List<String> added, List<String> removed);
+    }
+}
@@ -0,0 +1,122 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import com.timboudreau.adhoc.project.bytype.ByTypeChildren.MimeType;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+
+/**
+ * Caches mime types by file extension, so that resolving the type of most
+ * files does not go through the mime resolvers (which may read the file).
+ * The first few files with a given extension are resolved normally; if they
+ * all get the same type, later files with that extension are assigned it
+ * without being resolved. Extensions whose files resolve to different types
+ * (e.g. .xml, where resolvers look at content) and files with no extension
+ * are always resolved individually.
+ *
+ * @author Tim Boudreau
+ */
+final class MimeClassifier {
+
+    private static final int SAMPLES = 3;
+    private final ConcurrentMap<String, Entry> byExtension = new ConcurrentHashMap<>();
+
+    MimeType classify(FileObject fo) {
+        String ext = extension(fo.getNameExt());
+        MimeType result = cached(ext);
+        return result != null ? result : resolve(ext, fo);
+    }
+
+    /**
+     * Classify a file found on disk, only creating a FileObject for it if
+     * its extension is not settled yet.
+     *
+     * @return the type, or null if the file has vanished
+     */
+    MimeType classify(String name, Path file) {
+        String ext = extension(name);
+        MimeType result = cached(ext);
+        if (result == null) {
+            FileObject fo = FileUtil.toFileObject(file.toFile());
+            if (fo != null) {
+                result = resolve(ext, fo);
+            }
+        }
+        return result;
+    }
+
+    private MimeType cached(String ext) {
+        if (ext != null) {
+            Entry e = byExtension.get(ext);
+            if (e != null) {
+                return e.settledType();
+            }
+        }
+        return null;
+    }
+
+    private MimeType resolve(String ext, FileObject fo) {
+        MimeType type = MimeType.of(fo.getMIMEType());
+        if (ext != null) {
+            Entry e = byExtension.get(ext);
+            if (e == null) {
+                Entry nue = new Entry(type);
+                e = byExtension.putIfAbsent(ext, nue);
+                if (e == null) {
+                    return type;
+                }
+            }
+            e.sample(type);
+        }
+        return type;
+    }
+
+    private static String extension(String name) {
+        int ix = name.lastIndexOf('.');
+        // dot-files like .gitignore have no extension
+        return ix <= 0 || ix == name.length() - 1 ? null : name.substring(ix + 1);
+    }
+
+    private static final class Entry {
+
+        private final MimeType type;
+        private int samples = 1;
+        private boolean ambiguous;
+
+        Entry(MimeType type) {
+            this.type = type;
+        }
+
+        synchronized void sample(MimeType t) {
+            if (type != t) {
+                ambiguous = true;
+            } else {
+                samples++;
+            }
+        }
+
+        synchronized MimeType settledType() {
+            return !ambiguous && samples >= SAMPLES ? type : null;
+        }
+    }
+}
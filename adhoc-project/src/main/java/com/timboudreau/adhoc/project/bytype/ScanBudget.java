@@ -0,0 +1,103 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits on how much of a project folder the Files by Type scan visits, so
+ * that pointing a project at a home directory or a huge repository does not
+ * keep a CPU busy for minutes. A scan that runs out of files or time stops
+ * and leaves the index marked as partial.
+ *
+ * @author Tim Boudreau
+ */
+public final class ScanBudget {
+
+    public static final int DEFAULT_MAX_DEPTH = 12;
+    // Well above the size of large source trees, which should not come
+    // out partial; what this stops is a scan of a whole disk
+    public static final int DEFAULT_MAX_FILES = 1000000;
+    public static final int DEFAULT_MAX_SECONDS = 30;
+    public static final ScanBudget DEFAULT = new ScanBudget(DEFAULT_MAX_DEPTH,
+            DEFAULT_MAX_FILES, DEFAULT_MAX_SECONDS);
+    public final int maxDepth;
+    public final int maxFiles;
+    public final int maxSeconds;
+
+    public ScanBudget(int maxDepth, int maxFiles, int maxSeconds) {
+        if (maxDepth < 1 || maxFiles < 1 || maxSeconds < 1) {
+            throw new IllegalArgumentException("Bad budget " + maxDepth
+                    + ", " + maxFiles + ", " + maxSeconds);
+        }
+        this.maxDepth = maxDepth;
+        this.maxFiles = maxFiles;
+        this.maxSeconds = maxSeconds;
+    }
+
+    /**
+     * Start spending this budget.
+     */
+    Meter start() {
+        return new Meter();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ScanBudget)) {
+            return false;
+        }
+        ScanBudget b = (ScanBudget) o;
+        return b.maxDepth == maxDepth && b.maxFiles == maxFiles
+                && b.maxSeconds == maxSeconds;
+    }
+
+    @Override
+    public int hashCode() {
+        return (maxDepth * 31 + maxFiles) * 31 + maxSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "depth " + maxDepth + ", " + maxFiles + " files, "
+                + maxSeconds + " seconds";
+    }
+
+    /**
+     * Counts files visited by one scan, which may be on several threads at
+     * once.
+     */
+    final class Meter {
+
+        private final AtomicInteger files = new AtomicInteger();
+        private final long deadline = System.nanoTime()
+                + TimeUnit.SECONDS.toNanos(maxSeconds);
+
+        /**
+         * Count one more file.
+         *
+         * @return false if the budget is used up and scanning should stop
+         */
+        boolean tick() {
+            return files.incrementAndGet() <= maxFiles
+                    && System.nanoTime() - deadline < 0;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The paths with the highest values (sizes, timestamps) among those offered
+ * to it, kept in a min-heap bounded to a fixed size, so a new path costs
+ * O(log n) and never a sort of all files. Dropping a path, or lowering the
+ * value of one it holds, means some path it turned away may now belong in
+ * it; it is then marked stale and has to be refilled by offering it every
+ * path again. Not thread-safe.
+ *
+ * @author Tim Boudreau
+ */
+final class TopFiles {
+
+    private final int max;
+    private final PriorityQueue<Entry> heap;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean stale;
+
+    TopFiles(int max) {
+        this.max = max;
+        heap = new PriorityQueue<>(max + 1);
+    }
+
+    /**
+     * Offer a path and its value.
+     *
+     * @return true if the contents or order changed
+     */
+    boolean offer(String path, long value) {
+        Entry old = entries.get(path);
+        if (old != null) {
+            if (old.value == value) {
+                return false;
+            }
+            heap.remove(old);
+            entries.remove(path);
+            if (value < old.value) {
+                stale = true;
+            }
+        } else if (heap.size() == max) {
+            Entry min = heap.peek();
+            if (value < min.value || (value == min.value && path.compareTo(min.path) >= 0)) {
+                return false;
+            }
+            entries.remove(heap.poll().path);
+        }
+        Entry e = new Entry(path, value);
+        heap.add(e);
+        entries.put(path, e);
+        return true;
+    }
+
+    /**
+     * Drop a path which no longer exists.
+     *
+     * @return true if it was one of the paths held
+     */
+    boolean remove(String path) {
+        Entry old = entries.remove(path);
+        if (old != null) {
+            heap.remove(old);
+            stale = true;
+            return true;
+        }
+        return false;
+    }
+
+    boolean isStale() {
+        return stale;
+    }
+
+    void clear() {
+        heap.clear();
+        entries.clear();
+        stale = false;
+    }
+
+    /**
+     * The paths held, highest value first.
+     */
+    List<String> paths() {
+        List<Entry> sorted = new ArrayList<>(heap);
+        Collections.sort(sorted, Collections.reverseOrder());
+        List<String> result = new ArrayList<>(sorted.size());
+        for (Entry e : sorted) {
+            result.add(e.path);
+        }
+        return result;
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        final String path;
+        final long value;
+
+        Entry(String path, long value) {
+            this.path = path;
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            int result = Long.compare(value, o.value);
+            // lower paths rank higher on ties, so the order is stable
+            return result != 0 ? result : o.path.compareTo(path);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import java.text.DateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import org.openide.filesystems.FileObject;
+import org.openide.loaders.DataObject;
+import org.openide.loaders.DataObjectNotFoundException;
+import org.openide.nodes.AbstractNode;
+import org.openide.nodes.Children;
+import org.openide.nodes.FilterNode;
+import org.openide.nodes.Node;
+
+/**
+ * Lists the largest or most recently modified files in the index behind a
+ * Files by Type node. The index keeps these in bounded heaps as files are
+ * found and change, so the list is never sorted from all files.
+ *
+ * @author Tim Boudreau
+ */
+final class TopFilesNode extends AbstractNode {
+
+    enum Kind {
+
+        LARGEST, RECENT
+    }
+
+    TopFilesNode(ByTypeChildren owner, Kind kind) {
+        super(new TopFilesChildren(owner, kind));
+        switch (kind) {
+            case LARGEST:
+                setName("largest");
+                setDisplayName("Largest Files");
+                break;
+            case RECENT:
+                setName("recent");
+                setDisplayName("Recently Modified");
+                break;
+            default:
+                throw new AssertionError(kind);
+        }
+        setShortDescription("The " + FileTypeIndex.TOP_FILES + " "
+                + getDisplayName().toLowerCase() + " in the project");
+        setIconBaseWithExtension("com/timboudreau/adhoc/project/type.png");
+    }
+
+    private static final class TopFilesChildren extends Children.Keys<String> implements ChangeListener {
+
+        private final ByTypeChildren owner;
+        private final Kind kind;
+
+        TopFilesChildren(ByTypeChildren owner, Kind kind) {
+            this.owner = owner;
+            this.kind = kind;
+        }
+
+        @Override
+        protected void addNotify() {
+            owner.attach();
+            owner.addStatsListener(this);
+            setKeys(paths());
+        }
+
+        @Override
+        protected void removeNotify() {
+            owner.removeStatsListener(this);
+            owner.detach();
+            setKeys(Collections.<String>emptySet());
+        }
+
+        private List<String> paths() {
+            FileTypeIndex idx = owner.index();
+            if (idx == null) {
+                return Collections.<String>emptyList();
+            }
+            return kind == Kind.LARGEST ? idx.largestFiles() : idx.recentFiles();
+        }
+
+        @Override
+        public void stateChanged(ChangeEvent ce) {
+            setKeys(paths());
+            // Files that stayed in the list may have a new size or date
+            for (Node n : getNodes()) {
+                if (n instanceof TopFileNode) {
+                    ((TopFileNode) n).detailChanged();
+                }
+            }
+        }
+
+        @Override
+        protected Node[] createNodes(String key) {
+            FileTypeIndex idx = owner.index();
+            FileObject fo = idx == null ? null : idx.root().getFileObject(key);
+            try {
+                if (fo != null) {
+                    DataObject ob = DataObject.find(fo);
+                    return new Node[]{new TopFileNode(ob.getNodeDelegate(), key)};
+                }
+            } catch (DataObjectNotFoundException ex) {
+                // fall through
+            }
+            return null;
+        }
+
+        private final class TopFileNode extends FilterNode {
+
+            private final String path;
+
+            TopFileNode(Node orig, String path) {
+                super(orig);
+                this.path = path;
+            }
+
+            @Override
+            public String getHtmlDisplayName() {
+                FileTypeIndex idx = owner.index();
+                FileTypeIndex.FileRecord rec = idx == null ? null : idx.record(path);
+                if (rec == null) {
+                    return super.getHtmlDisplayName();
+                }
+                String detail = kind == Kind.LARGEST ? ByTypeChildren.formatSize(rec.size)
+                        : DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT)
+                        .format(new Date(rec.lastModified));
+                int ix = path.lastIndexOf('/');
+                if (ix > 0) {
+                    detail = path.substring(0, ix) + ", " + detail;
+                }
+                return getDisplayName() + "<font color=\"!controlShadow\"> (" + detail + ')';
+            }
+
+            void detailChanged() {
+                fireDisplayNameChange(null, null);
+            }
+        }
+    }
+}
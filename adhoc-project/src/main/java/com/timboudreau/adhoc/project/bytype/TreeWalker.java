@@ -0,0 +1,220 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import com.timboudreau.adhoc.project.ProjectVisibility;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Walks a folder on disk in parallel, one fork/join task per directory,
+ * listing directories with NIO rather than FileObject.getChildren(), so no
+ * FileObjects are created for the folders walked.
+ * <p/>
+ * Directories and files are remembered by file key (the device and inode,
+ * where the platform provides one, otherwise the canonical path), so that
+ * a symbolic link back to an ancestor cannot send the walk round in a
+ * loop, and a file reachable through several links or hard links is only
+ * visited once.
+ *
+ * @author Tim Boudreau
+ */
+final class TreeWalker {
+
+    private static final ForkJoinPool pool = new ForkJoinPool(
+            Math.max(4, Runtime.getRuntime().availableProcessors()));
+
+    private TreeWalker() {
+        throw new AssertionError();
+    }
+
+    interface PathVisitor {
+
+        /**
+         * Called for each directory before it is listed, possibly
+         * concurrently from several threads.
+         *
+         * @return false to skip the directory without listing it
+         */
+        boolean visitDirectory(String relativePath, Path dir, BasicFileAttributes attrs);
+
+        /**
+         * Called for each file, possibly concurrently from several threads.
+         *
+         * @return false to abort the walk
+         */
+        boolean visitFile(String relativePath, Path file, BasicFileAttributes attrs);
+    }
+
+    /**
+     * Walk a folder, visiting files with the same depth limit as
+     * FileTypeIndex's FileObject-based walk.
+     *
+     * @return true if the walk completed, false if the visitor aborted it
+     */
+    static boolean walk(Path root, int maxDepth, ProjectVisibility visibility, PathVisitor visitor) {
+        return walk(root, "", 0, maxDepth, visibility, visitor);
+    }
+
+    /**
+     * Walk a folder below the root of a walk, given its path relative to
+     * that root and its depth below it.
+     *
+     * @return true if the walk completed, false if the visitor aborted it
+     */
+    static boolean walk(Path dir, String relativePath, int depth, int maxDepth, ProjectVisibility visibility, PathVisitor visitor) {
+        return walk(dir, relativePath, depth, maxDepth, visibility, visitedSet(), visitor);
+    }
+
+    /**
+     * Walk a folder, skipping directories and files already in a set of
+     * file keys shared with other walks.
+     *
+     * @return true if the walk completed, false if the visitor aborted it
+     */
+    static boolean walk(Path dir, String relativePath, int depth, int maxDepth, ProjectVisibility visibility, Set<Object> visited, PathVisitor visitor) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        if (depth < maxDepth - 1) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(dir, BasicFileAttributes.class);
+                pool.invoke(new DirTask(dir, relativePath, attrs, depth, maxDepth, visibility, visited, visitor, cancelled));
+            } catch (IOException ex) {
+                Logger.getLogger(TreeWalker.class.getName()).log(Level.FINE,
+                        "Could not read " + dir, ex);
+            }
+        }
+        return !cancelled.get();
+    }
+
+    static Set<Object> visitedSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+    }
+
+    /**
+     * Get the key identifying a file on disk.
+     *
+     * @param resolve Whether to fall back to the canonical path if the
+     * platform has no file keys; if false, null is returned instead
+     */
+    static Object fileKey(Path p, BasicFileAttributes attrs, boolean resolve) {
+        Object key = attrs.fileKey();
+        if (key == null && resolve) {
+            try {
+                key = p.toRealPath();
+            } catch (IOException ex) {
+                key = p.toAbsolutePath().normalize();
+            }
+        }
+        return key;
+    }
+
+    private static final class DirTask extends RecursiveAction {
+
+        private final Path dir;
+        private final String relativePath;
+        private final BasicFileAttributes attrs;
+        private final int depth;
+        private final int maxDepth;
+        private final ProjectVisibility visibility;
+        private final Set<Object> visited;
+        private final PathVisitor visitor;
+        private final AtomicBoolean cancelled;
+
+        DirTask(Path dir, String relativePath, BasicFileAttributes attrs, int depth, int maxDepth, ProjectVisibility visibility, Set<Object> visited, PathVisitor visitor, AtomicBoolean cancelled) {
+            this.dir = dir;
+            this.relativePath = relativePath;
+            this.attrs = attrs;
+            this.depth = depth;
+            this.maxDepth = maxDepth;
+            this.visibility = visibility;
+            this.visited = visited;
+            this.visitor = visitor;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled.get() || !visited.add(fileKey(dir, attrs, true))
+                    || !visitor.visitDirectory(relativePath, dir, attrs)) {
+                return;
+            }
+            List<DirTask> subdirs = new ArrayList<>();
+            // Close the stream before forking, so open handles do not pile
+            // up with the depth of the tree
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path p : stream) {
+                    if (cancelled.get()) {
+                        return;
+                    }
+                    BasicFileAttributes entryAttrs;
+                    boolean link;
+                    try {
+                        // Only links need a second stat
+                        entryAttrs = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        link = entryAttrs.isSymbolicLink();
+                        if (link) {
+                            entryAttrs = Files.readAttributes(p, BasicFileAttributes.class);
+                        }
+                    } catch (IOException ex) {
+                        // broken link or vanished
+                        continue;
+                    }
+                    if (!visibility.isVisible(p.toFile())) {
+                        continue;
+                    }
+                    String name = p.getFileName().toString();
+                    String path = relativePath.isEmpty() ? name : relativePath + '/' + name;
+                    if (entryAttrs.isDirectory()) {
+                        if (depth + 1 < maxDepth - 1) {
+                            subdirs.add(new DirTask(p, path, entryAttrs, depth + 1, maxDepth, visibility, visited, visitor, cancelled));
+                        }
+                    } else {
+                        Object key = fileKey(p, entryAttrs, link);
+                        if (key != null && !visited.add(key)) {
+                            continue;
+                        }
+                        if (!visitor.visitFile(path, p, entryAttrs)) {
+                            cancelled.set(true);
+                            return;
+                        }
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException ex) {
+                Logger.getLogger(TreeWalker.class.getName()).log(Level.FINE,
+                        "Could not list " + dir, ex);
+            }
+            invokeAll(subdirs);
+        }
+    }
+}
@@ -20,7 +20,6 @@ package com.timboudreau.adhoc.project;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
@@ -150,15 +149,28 @@ public class AdhocProjectTest {
 
     @Test
     public void testFavorites() {
-        java.util.List<Favorite> favs = new ArrayList<>();
+        Favorites model = project.favoritesModel();
         char[] chars = new char[]{'d', 'c', 'b', 'a'};
         int ix = 1;
         for (char c : chars) {
-            favs.add(new Favorite(ix *= 10, "foo/" + c));
+            for (int i = 0; i < ix; i++) {
+                model.used("foo/" + c, false);
+            }
+            ix++;
         }
-        project.saveFavorites(favs);
         java.util.List<Favorite> nue = project.favorites();
-        assertEquals(new HashSet<>(favs), new HashSet<>(nue));
+        assertEquals(4, nue.size());
+        assertEquals("foo/a", nue.get(0).path());
+        assertEquals(4, nue.get(0).count);
+        assertEquals("foo/d", nue.get(3).path());
+        model.used("foo/d", true);
+        assertEquals("foo/d", project.favorites().get(0).path());
+        model.remove("foo/c");
+        assertEquals(3, project.favorites().size());
+        // write now, rather than after the delay, and read back
+        model.run();
+        assertEquals(new HashSet<>(project.favorites()),
+                new HashSet<>(new Favorites(project).list()));
     }
 
     @Test
@@ -183,11 +195,14 @@ public class AdhocProjectTest {
         assertNotNull(pn);
         Node[] nn = pn.getChildren().getNodes(true);
         assertNotNull(nn);
-        assertEquals(3, nn.length);
+        assertEquals(6, nn.length);
         assertEquals("Favorites", nn[0].getName());
         assertEquals("byType", nn[1].getName());
-        assertEquals("Sources", nn[2].getName());
-        Node[] sources = nn[2].getChildren().getNodes(true);
+        assertEquals("largest", nn[2].getName());
+        assertEquals("recent", nn[3].getName());
+        assertEquals("duplicates", nn[4].getName());
+        assertEquals("Sources", nn[5].getName());
+        Node[] sources = nn[5].getChildren().getNodes(true);
         assertNotNull(sources);
         assertEquals(10, sources.length);
 
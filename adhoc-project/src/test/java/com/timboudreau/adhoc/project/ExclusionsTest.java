@@ -0,0 +1,70 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class ExclusionsTest {
+
+    @Test
+    public void testNames() {
+        Exclusions ex = Exclusions.compile("node_modules, .git target/");
+        assertEquals("node_modules .git target", ex.patterns());
+        assertTrue(ex.isExcluded("node_modules"));
+        assertTrue(ex.isExcluded("web/node_modules"));
+        assertTrue(ex.isExcluded("target"));
+        assertFalse(ex.isExcluded("node_modules/foo/index.js"));
+        assertTrue(ex.isExcludedOrInExcludedFolder("node_modules/foo/index.js"));
+        assertTrue(ex.isExcludedOrInExcludedFolder("a/.git/config"));
+        assertFalse(ex.isExcludedOrInExcludedFolder("src/targets/a.txt"));
+        assertFalse(ex.isExcluded(""));
+    }
+
+    @Test
+    public void testWildcards() {
+        Exclusions ex = Exclusions.compile("*.min.js build/*.class docs/**/gen");
+        assertTrue(ex.isExcluded("lib/jquery.min.js"));
+        assertFalse(ex.isExcluded("lib/jquery.js"));
+        assertTrue(ex.isExcluded("build/Foo.class"));
+        assertFalse(ex.isExcluded("build/a/Foo.class"));
+        assertFalse(ex.isExcluded("x/build/Foo.class"));
+        assertTrue(ex.isExcluded("docs/api/v1/gen"));
+        assertTrue(ex.isExcludedOrInExcludedFolder("docs/api/gen/index.html"));
+        assertFalse(ex.isExcluded("docs/gen.txt"));
+    }
+
+    @Test
+    public void testEmpty() {
+        Exclusions ex = Exclusions.compile(" , ");
+        assertTrue(ex.isEmpty());
+        assertFalse(ex.isExcludedOrInExcludedFolder("node_modules/a.js"));
+        assertEquals(ex, Exclusions.compile(""));
+    }
+
+    @Test
+    public void testDefaultExcludesNothing() {
+        assertTrue(Exclusions.DEFAULT.isEmpty());
+        assertFalse(Exclusions.DEFAULT.isExcludedOrInExcludedFolder("target/classes/A.class"));
+    }
+}
@@ -0,0 +1,137 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class FavoritesTest {
+
+    @Test
+    public void testRecordRoundTrip() {
+        List<Favorite> favs = Arrays.asList(new Favorite(12, 3.25, 1380000000000L, "src/a.js"),
+                new Favorite(-4, 0, 1380000000001L, "removed.txt"),
+                new Favorite(1, 1E-9, 1380000000002L, "odd: name/with:colons ü.txt"));
+        String record = Favorites.encode(favs);
+        assertEquals("12,3.25,1380000000000:src/a.js\n-4,0.0,1380000000001:removed.txt\n"
+                + "1,1.0E-9,1380000000002:odd: name/with:colons ü.txt", record);
+        List<Favorite> read = Favorites.decode(record);
+        assertEquals(favs, read);
+        for (int i = 0; i < favs.size(); i++) {
+            assertEquals(favs.get(i).count, read.get(i).count);
+            assertEquals(favs.get(i).score, read.get(i).score, 0);
+            assertEquals(favs.get(i).lastAccess, read.get(i).lastAccess);
+        }
+    }
+
+    @Test
+    public void testOldRecordsAreRead() {
+        Favorite f = Favorites.decode("7:a/b.txt").get(0);
+        assertEquals("a/b.txt", f.path());
+        assertEquals(7, f.count);
+        assertEquals(7, f.score, 0);
+    }
+
+    @Test
+    public void testScoresDecay() {
+        long now = 1380000000000L;
+        Favorite old = new Favorite(0, 0, now, "old");
+        for (int i = 0; i < 40; i++) {
+            old.used(now);
+        }
+        assertEquals(40, old.score, 0.0001);
+        assertEquals(10, old.score(now + 2 * Favorite.HALF_LIFE), 0.0001);
+        Favorite recent = new Favorite(0, 0, now, "recent");
+        long later = now + 3 * Favorite.HALF_LIFE;
+        for (int i = 0; i < 6; i++) {
+            recent.used(later);
+        }
+        assertEquals(40, old.count);
+        // 40 uses six weeks ago are worth 5 now, less than 6 uses now
+        assertTrue(recent.compareTo(old) < 0);
+        old.used(later);
+        old.used(later);
+        assertEquals(7, old.score, 0.0001);
+        assertTrue(old.compareTo(recent) < 0);
+    }
+
+    @Test
+    public void testRank() {
+        long now = 1380000000000L;
+        Favorite f = new Favorite(1, 5, now, "x");
+        double rank = f.rank();
+        f.setRank(rank + 1, now + Favorite.HALF_LIFE);
+        assertEquals(rank + 1, f.rank(), 0.0001);
+        assertEquals(5, f.score, 0.0001);
+    }
+
+    @Test
+    public void testEqualRanksAreOrderedByPath() {
+        long now = 1380000000000L;
+        Favorite a = new Favorite(3, 2, now, "a");
+        Favorite b = new Favorite(5, 2, now, "b");
+        assertTrue(a.compareTo(b) < 0);
+        assertTrue(b.compareTo(a) > 0);
+        assertEquals(0, a.compareTo(new Favorite(1, 2, now, "a")));
+    }
+
+    @Test
+    public void testCompactingKeepsRemovedFavorites() {
+        long now = 1380000000000L;
+        long longAgo = now - 20 * Favorite.HALF_LIFE;
+        Map<String, Favorite> byPath = new HashMap<>();
+        for (Favorite f : Arrays.asList(new Favorite(-4, 0, now, "removed"),
+                new Favorite(-4, 5, longAgo, "removedLongAgo"),
+                new Favorite(3, 5, longAgo, "stale"),
+                new Favorite(3, 5, now, "fresh"))) {
+            byPath.put(f.relPath, f);
+        }
+        assertTrue(Favorites.compact(byPath, Collections.<Favorite>emptySet(), now));
+        assertEquals(new HashSet<>(Arrays.asList("removed", "removedLongAgo", "fresh")),
+                byPath.keySet());
+    }
+
+    @Test
+    public void testMovedFrom() {
+        List<String> deleted = Arrays.asList("src/a.js", "lib/b/c.js", "old/a.js");
+        assertEquals("old/a.js", Favorites.movedFrom(deleted, "new/a.js", false));
+        assertNull(Favorites.movedFrom(deleted, "x/b", false));
+        assertEquals("lib/b", Favorites.movedFrom(deleted, "x/b", true));
+        assertEquals("lib", Favorites.movedFrom(deleted, "lib", true));
+        assertEquals("lib/b/c.js", Favorites.movedFrom(deleted, "c.js", false));
+        assertNull(Favorites.movedFrom(deleted, "a", true));
+    }
+
+    @Test
+    public void testUnencodablePathsAndGarbageAreSkipped() {
+        assertEquals("", Favorites.encode(Arrays.asList(new Favorite(3, "a\nb"))));
+        assertEquals(Arrays.asList(new Favorite(2, "x")), Favorites.decode("garbage\n2:x\n\n"));
+        assertTrue(Favorites.decode("").isEmpty());
+    }
+}
@@ -0,0 +1,98 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project;
+
+import com.timboudreau.adhoc.project.GitIgnoreVisibility.Rule;
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class GitIgnoreVisibilityTest {
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void setup() throws IOException {
+        file = File.createTempFile("GitIgnoreVisibilityTest", ".txt");
+        dir = new File(file.getParentFile(), file.getName() + ".d");
+        assertTrue(dir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        dir.delete();
+    }
+
+    private boolean matches(String rule, String path, File f) {
+        int ix = path.lastIndexOf('/');
+        return Rule.parse(rule).matches(path, ix < 0 ? path : path.substring(ix + 1), f);
+    }
+
+    @Test
+    public void testCommentsAndBlanks() {
+        assertNull(Rule.parse(""));
+        assertNull(Rule.parse("   "));
+        assertNull(Rule.parse("# build output"));
+        assertNotNull(Rule.parse("\\#notacomment"));
+        assertTrue(matches("\\#notacomment", "#notacomment", file));
+    }
+
+    @Test
+    public void testNamesMatchAtAnyDepth() {
+        assertTrue(matches("*.log", "debug.log", file));
+        assertTrue(matches("*.log", "a/b/debug.log", file));
+        assertFalse(matches("*.log", "a/debug.log.txt", file));
+        assertTrue(matches("node_modules", "web/node_modules", dir));
+        assertTrue(matches("foo?.txt", "foo1.txt", file));
+        assertTrue(matches("foo[0-9].txt", "x/foo7.txt", file));
+        assertFalse(matches("foo[!0-9].txt", "foo7.txt", file));
+    }
+
+    @Test
+    public void testAnchored() {
+        assertTrue(matches("/build", "build", dir));
+        assertFalse(matches("/build", "sub/build", dir));
+        assertTrue(matches("doc/*.html", "doc/index.html", file));
+        assertFalse(matches("doc/*.html", "doc/api/index.html", file));
+        assertTrue(matches("**/gen", "a/b/gen", dir));
+        assertTrue(matches("**/gen", "gen", dir));
+        assertTrue(matches("doc/**", "doc/api/index.html", file));
+        assertTrue(matches("a/**/b", "a/b", dir));
+        assertTrue(matches("a/**/b", "a/x/y/b", dir));
+    }
+
+    @Test
+    public void testFoldersOnlyAndNegation() {
+        assertTrue(matches("out/", "out", dir));
+        assertFalse(matches("out/", "out", file));
+        Rule rule = Rule.parse("!important.log");
+        assertTrue(rule.negated);
+        assertTrue(rule.matches("important.log", "important.log", file));
+        assertTrue(Rule.parse("trailing.txt   ").matches("trailing.txt", "trailing.txt", file));
+    }
+}
@@ -0,0 +1,107 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class PendingUsesTest {
+
+    @Test
+    public void testDrain() {
+        PendingUses uses = new PendingUses();
+        uses.add("a", 10);
+        uses.add("b", 20);
+        uses.add("a", 30);
+        final Map<String, Integer> counts = new HashMap<>();
+        final Map<String, Long> times = new HashMap<>();
+        assertTrue(uses.drain(new PendingUses.Sink() {
+            @Override
+            public void used(String relPath, int count, long lastUse) {
+                counts.put(relPath, count);
+                times.put(relPath, lastUse);
+            }
+        }));
+        assertEquals(2, (int) counts.get("a"));
+        assertEquals(1, (int) counts.get("b"));
+        assertEquals(30L, (long) times.get("a"));
+        assertTrue(uses.isEmpty());
+        assertFalse(uses.drain(new PendingUses.Sink() {
+            @Override
+            public void used(String relPath, int count, long lastUse) {
+                fail("Drained twice: " + relPath);
+            }
+        }));
+    }
+
+    @Test
+    public void testNoUsesLostWhileDraining() throws InterruptedException {
+        final PendingUses uses = new PendingUses();
+        final int threads = 8;
+        final int perThread = 20000;
+        final String[] paths = {"a.txt", "b/c.txt", "d/e/f.txt"};
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            final int ix = i;
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < perThread; j++) {
+                            uses.add(paths[(ix + j) % paths.length], j);
+                        }
+                    } catch (InterruptedException ex) {
+                        throw new AssertionError(ex);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+            t.start();
+        }
+        final Map<String, Integer> counts = new HashMap<>();
+        PendingUses.Sink sink = new PendingUses.Sink() {
+            @Override
+            public void used(String relPath, int count, long lastUse) {
+                Integer old = counts.get(relPath);
+                counts.put(relPath, old == null ? count : old + count);
+            }
+        };
+        start.countDown();
+        while (done.getCount() > 0) {
+            uses.drain(sink);
+        }
+        uses.drain(sink);
+        int total = 0;
+        for (int count : counts.values()) {
+            total += count;
+        }
+        assertEquals(threads * perThread, total);
+        assertTrue(uses.isEmpty());
+    }
+}
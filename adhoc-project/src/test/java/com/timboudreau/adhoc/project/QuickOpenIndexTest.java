@@ -0,0 +1,141 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project;
+
+import com.timboudreau.adhoc.project.QuickOpenIndex.Match;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class QuickOpenIndexTest {
+
+    private static final Map<String, Double> NONE = Collections.emptyMap();
+
+    private static List<String> paths(List<Match> matches) {
+        List<String> result = new ArrayList<>();
+        for (Match m : matches) {
+            result.add(m.path);
+        }
+        return result;
+    }
+
+    @Test
+    public void testInitials() {
+        assertEquals("fti", QuickOpenIndex.initials("FileTypeIndex"));
+        assertEquals("ftij", QuickOpenIndex.initials("FileTypeIndex.java"));
+        assertEquals("ftij", QuickOpenIndex.initials("file_type-index.js"));
+        assertEquals("ps3", QuickOpenIndex.initials("pageSize3"));
+        assertEquals("hp", QuickOpenIndex.initials("HTMLParser"));
+    }
+
+    @Test
+    public void testKindsOfMatchRankInOrder() {
+        QuickOpenIndex index = new QuickOpenIndex.Builder().add("p", null, Arrays.asList(
+                "a/xfxtxix.txt",
+                "b/FileTypeIndex.java",
+                "c/fti",
+                "d/ftiles.md",
+                "e/soft.ini",
+                "f/fti.js",
+                "g/unrelated.txt"), NONE).build();
+        assertEquals(Arrays.asList("c/fti", "f/fti.js", "d/ftiles.md", "b/FileTypeIndex.java",
+                "e/soft.ini", "a/xfxtxix.txt"), paths(index.find("fti", 10)));
+        assertEquals(Arrays.asList("c/fti", "f/fti.js"), paths(index.find("FTI", 2)));
+        assertTrue(index.find("zzz", 10).isEmpty());
+        assertTrue(index.find("", 10).isEmpty());
+    }
+
+    @Test
+    public void testShorterNamesFirst() {
+        QuickOpenIndex index = new QuickOpenIndex.Builder().add("p", null, Arrays.asList(
+                "readme-long-name.md", "x/readme2.md", "readme.txt"), NONE).build();
+        assertEquals(Arrays.asList("readme.txt", "x/readme2.md", "readme-long-name.md"),
+                paths(index.find("readme", 10)));
+    }
+
+    @Test
+    public void testFavoritesRankFirstWithinAKindOfMatch() {
+        Map<String, Double> scores = new HashMap<>();
+        scores.put("src/app-controller.js", 20D);
+        scores.put("lib/appendix.js", 3D);
+        QuickOpenIndex index = new QuickOpenIndex.Builder()
+                .add("one", null, Arrays.asList("app.js", "src/app-controller.js", "src/zapper.js"), scores)
+                .add("two", null, Arrays.asList("lib/appendix.js", "lib/apples.js"), NONE)
+                .build();
+        List<Match> found = index.find("app", 10);
+        // scores are per project, so only the first is a favorite
+        assertEquals(Arrays.asList("app.js", "src/app-controller.js", "lib/apples.js",
+                "lib/appendix.js", "src/zapper.js"), paths(found));
+        assertEquals("one", found.get(1).projectName);
+        assertEquals("two", found.get(2).projectName);
+        // an empty query lists favorites, best first
+        assertEquals(Arrays.asList("src/app-controller.js"), paths(index.find("", 10)));
+        // a favorite does not outrank a better kind of match
+        assertEquals("app.js", index.find("app", 1).get(0).path);
+    }
+
+    @Test
+    public void testResultsAreBounded() {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            paths.add("dir" + (i % 10) + "/File" + i + ".txt");
+        }
+        QuickOpenIndex index = new QuickOpenIndex.Builder().add("p", null, paths, NONE).build();
+        assertEquals(5000, index.size());
+        List<Match> found = index.find("file", 20);
+        assertEquals(20, found.size());
+        // shortest names first
+        assertEquals("dir0/File0.txt", found.get(0).path);
+        for (Match m : found) {
+            assertTrue(m.path, m.name().length() <= "File99.txt".length());
+        }
+        assertEquals("dir7/File4567.txt", index.find("f4567", 5).get(0).path);
+    }
+
+    @Test
+    public void testUpdate() {
+        QuickOpenIndex index = new QuickOpenIndex.Builder().add("p", null, Arrays.asList(
+                "readme.txt", "src/reader.js", "src/writer.js"), NONE).build();
+        Map<String, Double> scores = new HashMap<>();
+        scores.put("lib/read.js", 5D);
+        QuickOpenIndex updated = index.update(null, Arrays.asList("lib/read.js", "src/reader.js"),
+                Arrays.asList("readme.txt", "missing.txt"), scores);
+        // the original is unchanged
+        assertEquals(Arrays.asList("src/reader.js", "readme.txt"), paths(index.find("read", 10)));
+        assertEquals(3, updated.size());
+        assertEquals(2, updated.changes());
+        assertEquals(Arrays.asList("lib/read.js", "src/reader.js"), paths(updated.find("read", 10)));
+        assertEquals(Arrays.asList("lib/read.js"), paths(updated.find("read", 1)));
+        assertEquals(Arrays.asList("lib/read.js"), paths(updated.find("", 10)));
+        // adding back a removed file, and removing an added one
+        updated = updated.update(null, Arrays.asList("readme.txt"), Arrays.asList("lib/read.js"), NONE);
+        assertEquals(Arrays.asList("src/reader.js", "readme.txt"), paths(updated.find("read", 10)));
+        assertEquals(0, updated.changes());
+        assertEquals(3, updated.size());
+    }
+}
@@ -0,0 +1,115 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import com.timboudreau.adhoc.project.bytype.ByTypeChildren.MimeType;
+import com.timboudreau.adhoc.project.bytype.DuplicateFinder.Group;
+import com.timboudreau.adhoc.project.bytype.FileTypeIndex.FileRecord;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class DuplicateFinderTest {
+
+    private File dir;
+    private final Map<String, FileRecord> files = new HashMap<>();
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("DuplicateFinderTest").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private void write(String name, byte[] content) throws IOException {
+        File f = new File(dir, name);
+        try (FileOutputStream out = new FileOutputStream(f)) {
+            out.write(content);
+        }
+        files.put(name, new FileRecord(MimeType.of("text/plain"), f.length(), f.lastModified()));
+    }
+
+    private static byte[] bytes(int size, int seed) {
+        byte[] result = new byte[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = (byte) (i * 31 + seed);
+        }
+        return result;
+    }
+
+    @Test
+    public void testFindsIdenticalFiles() throws Exception {
+        write("a.txt", bytes(100, 1));
+        write("b.txt", bytes(100, 1));
+        write("c.txt", bytes(100, 2));
+        // large enough to be mapped
+        write("d.bin", bytes(1024 * 1024, 3));
+        write("e.bin", bytes(1024 * 1024, 3));
+        write("f.bin", bytes(1024 * 1024, 3));
+        List<Group> groups = new DuplicateFinder().find(dir.toPath(), files);
+        assertEquals(2, groups.size());
+        assertEquals(Arrays.asList("d.bin", "e.bin", "f.bin"), groups.get(0).paths);
+        assertEquals(2L * 1024 * 1024, groups.get(0).wasted());
+        assertEquals(Arrays.asList("a.txt", "b.txt"), groups.get(1).paths);
+        assertEquals(100L, groups.get(1).size);
+    }
+
+    @Test
+    public void testHashesAreCachedUntilFilesChange() throws Exception {
+        write("a.txt", bytes(100, 1));
+        write("b.txt", bytes(100, 1));
+        DuplicateFinder finder = new DuplicateFinder();
+        assertEquals(1, finder.find(dir.toPath(), files).size());
+        // Same size and timestamp in the index, so the cached hash is used
+        // and the change is not seen
+        FileRecord rec = files.get("b.txt");
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "b.txt"))) {
+            out.write(bytes(100, 2));
+        }
+        assertEquals(1, finder.find(dir.toPath(), files).size());
+        files.put("b.txt", new FileRecord(rec.type, rec.size, rec.lastModified + 1000));
+        assertTrue(finder.find(dir.toPath(), files).isEmpty());
+    }
+
+    @Test
+    public void testHash() throws Exception {
+        write("a.txt", new byte[0]);
+        assertEquals("da39a3ee5e6b4b0d3255bfef95601890afd80709",
+                DuplicateFinder.hash(new File(dir, "a.txt").toPath()));
+    }
+}
@@ -0,0 +1,114 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import com.timboudreau.adhoc.project.AdhocProject;
+import com.timboudreau.adhoc.project.Exclusions;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.netbeans.spi.project.ProjectState;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class IndexServiceTest {
+
+    private static final ProjectState STATE = new ProjectState() {
+        @Override
+        public void markModified() {
+            // do nothing
+        }
+
+        @Override
+        public void notifyDeleted() throws IllegalStateException {
+            // do nothing
+        }
+    };
+    private File dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = FileUtil.normalizeFile(Files.createTempDirectory("IndexServiceTest").toFile());
+        // a checkout with a project in a folder of another
+        assertTrue(new File(dir, ".git").mkdir());
+        assertTrue(new File(dir, "web/lib").mkdirs());
+        write(".gitignore", "*.log\n");
+        write("readme.txt", "hello");
+        write("web/index.js", "var x;");
+        write("web/lib/util.js", "var y;");
+        write("web/debug.log", "ignored");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (dir != null) {
+            FileObject fo = FileUtil.toFileObject(dir);
+            if (fo != null) {
+                fo.delete();
+            }
+        }
+    }
+
+    private void write(String path, String content) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(new File(dir, path))) {
+            out.write(content.getBytes("UTF-8"));
+        }
+    }
+
+    @Test
+    public void testProjectInsideAnIndexedProjectIsNotScanned() throws IOException {
+        FileObject parentDir = FileUtil.toFileObject(dir);
+        FileObject childDir = parentDir.getFileObject("web");
+        AdhocProject parent = new AdhocProject(parentDir, STATE);
+        AdhocProject child = new AdhocProject(childDir, STATE);
+        Exclusions none = Exclusions.compile("");
+        FileTypeIndex outer = IndexService.acquire(parentDir, ScanBudget.DEFAULT, none, parent.getVisibility());
+        FileTypeIndex inner = null;
+        try {
+            outer.build();
+            assertTrue(outer.isBuilt());
+            assertFalse(outer.isSeeded());
+            inner = IndexService.acquire(childDir, ScanBudget.DEFAULT, none, child.getVisibility());
+            assertNotSame(outer, inner);
+            inner.build();
+            assertTrue(inner.isBuilt());
+            assertTrue("Child project was scanned again", inner.isSeeded());
+            List<String> paths = inner.paths();
+            Collections.sort(paths);
+            assertEquals(Arrays.asList("index.js", "lib/util.js"), paths);
+        } finally {
+            IndexService.release(outer);
+            if (inner != null) {
+                IndexService.release(inner);
+            }
+        }
+    }
+}
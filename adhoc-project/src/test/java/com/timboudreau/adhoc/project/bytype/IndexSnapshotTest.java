@@ -0,0 +1,117 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import com.timboudreau.adhoc.project.bytype.ByTypeChildren.MimeType;
+import com.timboudreau.adhoc.project.bytype.FileTypeIndex.FileRecord;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class IndexSnapshotTest {
+
+    private File file;
+
+    @Before
+    public void setup() throws IOException {
+        file = File.createTempFile("IndexSnapshotTest", ".idx");
+    }
+
+    @After
+    public void tearDown() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        MimeType js = MimeType.of("text/javascript");
+        MimeType png = MimeType.of("image/png");
+        Map<String, FileRecord> files = new HashMap<>();
+        files.put("index.js", new FileRecord(js, 1234, 1380000000000L));
+        files.put("lib/a.js", new FileRecord(js, 0, 1380000000001L));
+        files.put("lib/b.js", new FileRecord(js, 5000000000L, 1380000000002L));
+        files.put("img/\u00fcber.png", new FileRecord(png, 77, 1380000000003L));
+        Map<String, Long> folders = new HashMap<>();
+        folders.put("", 1370000000000L);
+        folders.put("lib", 1370000000001L);
+        folders.put("img", 1370000000002L);
+        Map<String, Long> ignoreFiles = new HashMap<>();
+        ignoreFiles.put("", 1360000000000L);
+        ignoreFiles.put("lib", 1360000000001L);
+
+        new IndexSnapshot(files, folders, ignoreFiles, 7, "node_modules dist").write(file);
+        IndexSnapshot read = IndexSnapshot.read(file);
+
+        assertEquals(7, read.maxDepth);
+        assertEquals("node_modules dist", read.exclusions);
+        assertEquals(folders, read.folders);
+        assertEquals(ignoreFiles, read.ignoreFiles);
+        assertEquals(files.keySet(), read.files.keySet());
+        for (Map.Entry<String, FileRecord> e : files.entrySet()) {
+            FileRecord orig = e.getValue();
+            FileRecord got = read.files.get(e.getKey());
+            assertEquals(e.getKey(), orig.type.type, got.type.type);
+            assertEquals(e.getKey(), orig.size, got.size);
+            assertEquals(e.getKey(), orig.lastModified, got.lastModified);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testGarbageIsRejected() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        }
+        IndexSnapshot.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testHugeLengthIsRejected() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(0x41544934);
+            // max depth, then an exclusions string of Integer.MAX_VALUE bytes
+            out.write(new byte[]{7, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 7});
+        }
+        IndexSnapshot.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedIsRejected() throws IOException {
+        Map<String, FileRecord> files = new HashMap<>();
+        files.put("a/b/c.txt", new FileRecord(MimeType.of("text/plain"), 10, 20));
+        new IndexSnapshot(files, new HashMap<String, Long>(), new HashMap<String, Long>(), 12, "").write(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        IndexSnapshot.read(file);
+    }
+}
@@ -0,0 +1,56 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import com.timboudreau.adhoc.project.bytype.ByTypeChildren.MimeType;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class MimeTypeTest {
+
+    @Test
+    public void testTypesInACategoryAreOneInstance() {
+        MimeType a = MimeType.of("text/javascript");
+        MimeType b = MimeType.of("application/javascript");
+        assertSame(a, b);
+        assertSame(a, MimeType.of("text/javascript"));
+        assertEquals("Javascript", a.toString());
+        assertNotSame(a, MimeType.of("text/html"));
+    }
+
+    @Test
+    public void testCategories() {
+        assertEquals("Images", MimeType.of("image/png").toString());
+        assertEquals("XML", MimeType.of("text/xml-external-parsed-entity").toString());
+        assertEquals("Shell Scripts", MimeType.of("text/x-sh").toString());
+        assertEquals("Python", MimeType.of("text/x-python").toString());
+        assertEquals("Yaml", MimeType.of("application/yaml").toString());
+        assertEquals("video/mp4", MimeType.of("video/mp4").toString());
+    }
+
+    @Test
+    public void testUnknownTypesSortLast() {
+        assertTrue(MimeType.of("video/mp4").compareTo(MimeType.of("text/x-java")) > 0);
+        assertTrue(MimeType.of("text/html").compareTo(MimeType.of("text/x-java")) < 0);
+    }
+}
@@ -0,0 +1,81 @@
+/* Copyright (C) 2013 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package com.timboudreau.adhoc.project.bytype;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TopFilesTest {
+
+    @Test
+    public void testKeepsHighestValues() {
+        TopFiles top = new TopFiles(3);
+        assertTrue(top.offer("a", 10));
+        assertTrue(top.offer("b", 50));
+        assertTrue(top.offer("c", 30));
+        assertTrue(top.offer("d", 40));
+        assertFalse(top.offer("e", 5));
+        assertEquals(Arrays.asList("b", "d", "c"), top.paths());
+        assertFalse(top.isStale());
+    }
+
+    @Test
+    public void testValueChanges() {
+        TopFiles top = new TopFiles(2);
+        top.offer("a", 10);
+        top.offer("b", 20);
+        assertFalse(top.offer("a", 10));
+        assertTrue(top.offer("a", 30));
+        assertEquals(Arrays.asList("a", "b"), top.paths());
+        assertFalse(top.isStale());
+        assertTrue(top.offer("a", 1));
+        assertEquals(Arrays.asList("b", "a"), top.paths());
+        assertTrue(top.isStale());
+    }
+
+    @Test
+    public void testRemoveMarksStale() {
+        TopFiles top = new TopFiles(2);
+        top.offer("a", 10);
+        top.offer("b", 20);
+        assertFalse(top.remove("c"));
+        assertFalse(top.isStale());
+        assertTrue(top.remove("a"));
+        assertTrue(top.isStale());
+        assertEquals(Arrays.asList("b"), top.paths());
+        top.clear();
+        assertFalse(top.isStale());
+        assertTrue(top.paths().isEmpty());
+    }
+
+    @Test
+    public void testTiesAreStable() {
+        TopFiles top = new TopFiles(2);
+        top.offer("c", 1);
+        top.offer("b", 1);
+        top.offer("a", 1);
+        assertFalse(top.offer("d", 1));
+        assertEquals(Arrays.asList("a", "b"), top.paths());
+    }
+}